@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.benchmark;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.PrefixTrie;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserFilter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.keycloak.models.UserModel;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares matching of a user against {@code attributesStartsWith} and
+ * {@code attributesThatAreStartFor} by nested streams of {@link UserFilter} with the walk over
+ * {@link PrefixTrie}. The user has a non-matching value and a value that matches only the last
+ * requested one, that is the worst case for the nested streams.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixMatchBenchmark {
+
+  private static final String ATTRIBUTE = "hierarchy";
+
+  @Param({"1", "10", "100", "1000"})
+  private int prefixCount;
+
+  private UserModel userModel;
+  private Map<String, List<String>> attributesStartsWith;
+  private Map<String, List<String>> attributesThatAreStartFor;
+  private PrefixTrie prefixes;
+  private PrefixTrie starts;
+
+  @Setup
+  public void setUp() {
+    var last = prefixCount - 1;
+    userModel = new InMemoryUserAdapter(null, null, "userId");
+    userModel.setAttribute(ATTRIBUTE, List.of("9999999.100.200", last + ".100"));
+
+    var requestedPrefixes = IntStream.range(0, prefixCount)
+        .mapToObj(i -> i + ".")
+        .collect(Collectors.toList());
+    var requestedValues = IntStream.range(0, prefixCount)
+        .mapToObj(i -> i + ".100.200.300")
+        .collect(Collectors.toList());
+    attributesStartsWith = Map.of(ATTRIBUTE, requestedPrefixes);
+    attributesThatAreStartFor = Map.of(ATTRIBUTE, requestedValues);
+    prefixes = new PrefixTrie(requestedPrefixes);
+    starts = new PrefixTrie(requestedValues);
+  }
+
+  @Benchmark
+  public boolean startsWithNestedStreams() {
+    return UserFilter.isUserMatchesAttributesStartsWith(userModel, attributesStartsWith);
+  }
+
+  @Benchmark
+  public boolean startsWithTrie() {
+    return UserFilter.isUserMatchesAnyPrefix(userModel, ATTRIBUTE, prefixes);
+  }
+
+  @Benchmark
+  public boolean thatAreStartForNestedStreams() {
+    return UserFilter.isUserMatchesAttributesThatAreStartFor(userModel,
+        attributesThatAreStartFor);
+  }
+
+  @Benchmark
+  public boolean thatAreStartForTrie() {
+    return UserFilter.isUserMatchesAnyStartFor(userModel, ATTRIBUTE, starts);
+  }
+}
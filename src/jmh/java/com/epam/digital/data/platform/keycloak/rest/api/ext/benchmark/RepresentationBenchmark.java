@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.benchmark;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserRepresentationMapper;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.Projection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.keycloak.models.UserModel;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mapping of a page of {@value #PAGE_SIZE} {@link SyntheticUsers} to {@link UserRepresentation}
+ * with the full representation and with a projection of a few fields and attributes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepresentationBenchmark {
+
+  private static final int PAGE_SIZE = 1000;
+
+  private List<UserModel> users;
+  private UserRepresentationMapper fullMapper;
+  private UserRepresentationMapper projectionMapper;
+
+  @Setup
+  public void setUp() {
+    var syntheticUsers = new SyntheticUsers(PAGE_SIZE);
+    users = syntheticUsers.getUsers();
+    fullMapper = new UserRepresentationMapper(syntheticUsers.getSession(),
+        syntheticUsers.getRealm(), null);
+    var projection = new Projection();
+    projection.setFields(List.of("id", "username"));
+    projection.setAttributes(List.of("drfo", "edrpou"));
+    projectionMapper = new UserRepresentationMapper(syntheticUsers.getSession(),
+        syntheticUsers.getRealm(), projection);
+  }
+
+  @Benchmark
+  public List<UserRepresentation> fullRepresentation() {
+    return users.stream().map(fullMapper::toRepresentation).collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<UserRepresentation> projection() {
+    return users.stream().map(projectionMapper::toRepresentation).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.benchmark;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserApiProvider;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserFilter;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.Projection;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.HttpHeaders;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.services.resources.admin.AdminAuth;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pagination loop of {@link UserApiProvider#searchUsersByAttributes(HttpRequest,
+ * SearchUsersByAttributesRequestDto)} over {@link SyntheticUsers} that aren't stored in the
+ * database, so users are scanned page by page and filtered in memory.
+ * <ul>
+ *   <li>{@code firstPage} - first page of users of an organization, it's found after scanning
+ *   about {@code limit * }{@value SyntheticUsers#ORGANIZATIONS} users</li>
+ *   <li>{@code rareMatch} - user with a unique attribute, all the users are scanned</li>
+ *   <li>{@code unpaginated} - all users of a subject type in a single response</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchLoopBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  private int usersCount;
+
+  @Param({"10", "100"})
+  private int limit;
+
+  private UserApiProvider userApiProvider;
+  private HttpRequest request;
+
+  @Setup
+  public void setUp() {
+    var syntheticUsers = new SyntheticUsers(usersCount);
+    userApiProvider = new BenchmarkUserApiProvider(syntheticUsers.getSession());
+    request = SyntheticUsers.stub(HttpRequest.class, Map.of());
+  }
+
+  @Benchmark
+  public SearchUsersByAttributesResponseDto firstPage() {
+    return userApiProvider.searchUsersByAttributes(request,
+        request(Map.of("edrpou", List.of(SyntheticUsers.organization(7))), limit));
+  }
+
+  @Benchmark
+  public SearchUsersByAttributesResponseDto rareMatch() {
+    return userApiProvider.searchUsersByAttributes(request,
+        request(Map.of("drfo", List.of(String.format("%010d", usersCount - 1))), limit));
+  }
+
+  @Benchmark
+  public SearchUsersByAttributesResponseDto unpaginated() {
+    return userApiProvider.searchUsersByAttributes(request,
+        request(Map.of("subjectType", List.of("type0")), 0));
+  }
+
+  private static SearchUsersByAttributesRequestDto request(
+      Map<String, List<String>> attributesEquals, int limit) {
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesEquals(attributesEquals);
+    requestDto.getPagination().setLimit(limit);
+    // keep representation mapping out of the measured loop
+    var projection = new Projection();
+    projection.setFields(List.of("id"));
+    requestDto.setProjection(projection);
+    return requestDto;
+  }
+
+  private static class BenchmarkUserApiProvider extends UserApiProvider {
+
+    private BenchmarkUserApiProvider(KeycloakSession session) {
+      super(session, new UserFilter());
+    }
+
+    @Override
+    protected void validateRequestRealm(HttpRequest request, String realmName) {
+    }
+
+    @Override
+    protected AdminAuth authenticateRealmAdminRequest(HttpHeaders headers) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.SubjectCredentialManager;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+
+/**
+ * Synthetic in-memory realm for the benchmarks. Users have attributes with the cardinalities seen
+ * in production realms:
+ * <ul>
+ *   <li>{@code drfo} - unique for every user</li>
+ *   <li>{@code edrpou} - one of {@value #ORGANIZATIONS} organizations</li>
+ *   <li>{@code subjectType} - one of {@value #SUBJECT_TYPES} types</li>
+ *   <li>{@code hierarchy} - position in the organization tree of 3 levels with 10 children per
+ *   node, e.g. {@code 103.205.301}</li>
+ *   <li>{@code KATOTTG} - 1 to 3 territory codes out of {@value #TERRITORIES}</li>
+ * </ul>
+ * Users are generated with a fixed seed, so every fork works with the same data.
+ */
+public final class SyntheticUsers {
+
+  public static final int ORGANIZATIONS = 1000;
+  public static final int SUBJECT_TYPES = 3;
+  public static final int TERRITORIES = 500;
+
+  private final KeycloakSession session;
+  private final RealmModel realm;
+  private final List<UserModel> users;
+
+  public SyntheticUsers(int count) {
+    var userProvider = stub(UserProvider.class,
+        Map.of("getUsersStream", args -> getUsersStream((int) args[1], (int) args[2])));
+    this.realm = stub(RealmModel.class, Map.of("getName", args -> "benchmark"));
+    var context = stub(KeycloakContext.class, Map.of("getRealm", args -> realm));
+    this.session = stub(KeycloakSession.class,
+        Map.of("getContext", args -> context, "users", args -> userProvider));
+    var credentialManager = stub(SubjectCredentialManager.class, Map.of());
+
+    var random = new Random(42);
+    this.users = IntStream.range(0, count)
+        .mapToObj(i -> createUser(i, random, credentialManager))
+        .collect(Collectors.toUnmodifiableList());
+  }
+
+  public KeycloakSession getSession() {
+    return session;
+  }
+
+  public RealmModel getRealm() {
+    return realm;
+  }
+
+  public List<UserModel> getUsers() {
+    return users;
+  }
+
+  private Stream<UserModel> getUsersStream(int firstResult, int maxResults) {
+    var from = Math.min(firstResult, users.size());
+    var to = maxResults < 0 ? users.size() : Math.min(from + maxResults, users.size());
+    return users.subList(from, to).stream();
+  }
+
+  private UserModel createUser(int index, Random random,
+      SubjectCredentialManager credentialManager) {
+    var user = new InMemoryUserAdapter(session, realm, "id" + index) {
+      @Override
+      public SubjectCredentialManager credentialManager() {
+        return credentialManager;
+      }
+    };
+    user.setUsername(String.format("user%07d", index));
+    user.setEmail(String.format("user%07d@example.com", index));
+    user.setFirstName("First" + index);
+    user.setLastName("Last" + index);
+    user.setEnabled(true);
+    user.setAttribute("drfo", List.of(String.format("%010d", index)));
+    user.setAttribute("edrpou", List.of(organization(random.nextInt(ORGANIZATIONS))));
+    user.setAttribute("subjectType", List.of("type" + random.nextInt(SUBJECT_TYPES)));
+    user.setAttribute("hierarchy", List.of(String.format("%d.%d.%d",
+        100 + random.nextInt(10), 200 + random.nextInt(10), 300 + random.nextInt(10))));
+    var territories = new ArrayList<String>();
+    var territoriesCount = 1 + random.nextInt(3);
+    for (var i = 0; i < territoriesCount; i++) {
+      territories.add(String.format("UA%05d", random.nextInt(TERRITORIES)));
+    }
+    user.setAttribute("KATOTTG", territories);
+    return user;
+  }
+
+  /**
+   * Stub of the interface that answers the listed methods and returns {@code null},
+   * {@code false}, zero or an empty stream from the others. Unlike mocks, it doesn't record
+   * invocations and doesn't capture stack traces, so it doesn't distort the measurements.
+   */
+  public static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+    InvocationHandler handler = (proxy, method, args) -> {
+      var answer = answers.get(method.getName());
+      if (answer != null) {
+        return answer.apply(args);
+      }
+      var returnType = method.getReturnType();
+      if (returnType == Stream.class) {
+        return Stream.empty();
+      }
+      if (returnType == boolean.class) {
+        return false;
+      }
+      if (returnType == int.class) {
+        return 0;
+      }
+      if (returnType == long.class) {
+        return 0L;
+      }
+      return null;
+    };
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+  }
+
+  public static String organization(int index) {
+    return String.format("%08d", index);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.benchmark;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.CompiledUserQuery;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.PrefixExpander;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserFilter;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.keycloak.models.UserModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full scan of {@link SyntheticUsers} with the {@code UserFilter.isUserMatches*} predicates and
+ * with {@link CompiledUserQuery} built from the same filters. Every operation checks all the users
+ * and returns the count of matched ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserFilterBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  private int usersCount;
+
+  private List<UserModel> users;
+  private Map<String, List<String>> attributesEquals;
+  private Map<String, List<String>> attributesStartsWith;
+  private Map<String, List<String>> attributesThatAreStartFor;
+  private CompiledUserQuery compiledQuery;
+
+  @Setup
+  public void setUp() {
+    users = new SyntheticUsers(usersCount).getUsers();
+    attributesEquals = Map.of(
+        "subjectType", List.of("type0", "type1"),
+        "edrpou", List.of(SyntheticUsers.organization(1), SyntheticUsers.organization(2),
+            SyntheticUsers.organization(3)));
+    attributesStartsWith = Map.of("KATOTTG", List.of("UA001", "UA002", "UA0030"));
+    attributesThatAreStartFor = Map.of("hierarchy", List.of("101.201.301", "102.205.309"));
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesEquals(attributesEquals);
+    requestDto.setAttributesStartsWith(attributesStartsWith);
+    requestDto.setAttributesThatAreStartFor(attributesThatAreStartFor);
+    compiledQuery = CompiledUserQuery.compile(requestDto, new PrefixExpander(null), null);
+  }
+
+  @Benchmark
+  public long attributesEquals() {
+    return users.stream()
+        .filter(user -> UserFilter.isUserMatchesAttributesEquals(user, attributesEquals))
+        .count();
+  }
+
+  @Benchmark
+  public long attributesStartsWith() {
+    return users.stream()
+        .filter(user -> UserFilter.isUserMatchesAttributesStartsWith(user, attributesStartsWith))
+        .count();
+  }
+
+  @Benchmark
+  public long attributesThatAreStartFor() {
+    return users.stream()
+        .filter(user -> UserFilter.isUserMatchesAttributesThatAreStartFor(user,
+            attributesThatAreStartFor))
+        .count();
+  }
+
+  @Benchmark
+  public long allFilters() {
+    return users.stream()
+        .filter(user -> UserFilter.isUserMatchesAttributesEquals(user, attributesEquals)
+            && UserFilter.isUserMatchesAttributesStartsWith(user, attributesStartsWith)
+            && UserFilter.isUserMatchesAttributesThatAreStartFor(user,
+            attributesThatAreStartFor))
+        .count();
+  }
+
+  @Benchmark
+  public long allFiltersCompiled() {
+    return users.stream().filter(compiledQuery).count();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/**
+ * Runs searches of the async endpoints on a bounded pool of threads, every search in its own
+ * session and transaction, so long searches don't hold the request threads that serve logins.
+ * <p>
+ * Searches that can't be started by a free thread wait in a bounded queue. If the queue is full the
+ * search is rejected with {@code 503 Service Unavailable} and {@code Retry-After} header, so the
+ * load of the searches on the node is limited. Searches that aren't completed in time are answered
+ * with the same response, so the client connection isn't held by a search that waits too long.
+ */
+public class AsyncSearchExecutor {
+
+  private static final long RETRY_AFTER_SECONDS = 1;
+
+  private final int threads;
+  private final int queueSize;
+  private final long timeoutSeconds;
+  private KeycloakSessionFactory sessionFactory;
+  private ThreadPoolExecutor executor;
+
+  /**
+   * @param threads        count of searches run concurrently. If 0 then async searches are
+   *                       disabled
+   * @param queueSize      count of searches waiting for a free thread
+   * @param timeoutSeconds time in seconds the search may wait and run before its response is
+   *                       resumed with {@link ServiceUnavailableException}. If 0 then searches
+   *                       aren't timed out
+   */
+  public AsyncSearchExecutor(int threads, int queueSize, long timeoutSeconds) {
+    this.threads = threads;
+    this.queueSize = queueSize;
+    this.timeoutSeconds = timeoutSeconds;
+  }
+
+  public static AsyncSearchExecutor disabled() {
+    return new AsyncSearchExecutor(0, 0, 0);
+  }
+
+  public boolean isEnabled() {
+    return threads > 0 && executor != null;
+  }
+
+  public void start(KeycloakSessionFactory sessionFactory) {
+    if (threads <= 0) {
+      return;
+    }
+    this.sessionFactory = sessionFactory;
+    BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize)
+        : new SynchronousQueue<>();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+        runnable -> {
+          var thread = new Thread(runnable, "users-search-async");
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the search in a new session and resumes the response with its result or error. If the
+   * search can't be queued or isn't completed in time the response is resumed with
+   * {@link ServiceUnavailableException}. A timed out search that is still queued isn't started,
+   * one that is already running is completed but its result is dropped.
+   *
+   * @param response suspended response of the request
+   * @param search   search to run in the new session
+   */
+  public <T> void submit(AsyncResponse response, Function<KeycloakSession, T> search) {
+    if (timeoutSeconds > 0) {
+      response.setTimeoutHandler(timedOut -> timedOut.resume(
+          new ServiceUnavailableException(RETRY_AFTER_SECONDS)));
+      response.setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+    }
+    try {
+      executor.execute(() -> run(response, search));
+    } catch (RejectedExecutionException e) {
+      response.resume(new ServiceUnavailableException(RETRY_AFTER_SECONDS));
+    }
+  }
+
+  private <T> void run(AsyncResponse response, Function<KeycloakSession, T> search) {
+    if (response.isDone()) {
+      // the request timed out or was cancelled while the search was queued
+      return;
+    }
+    var result = new AtomicReference<T>();
+    try {
+      KeycloakModelUtils.runJobInTransaction(sessionFactory,
+          session -> result.set(search.apply(session)));
+    } catch (RuntimeException e) {
+      response.resume(e);
+      return;
+    }
+    // resumed after the transaction is completed, so the commit errors are returned as well
+    response.resume(result.get());
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.SearchRecorder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import javax.ws.rs.BadRequestException;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.representations.idm.UserRepresentation;
+
+/**
+ * Evaluates several v2 search requests. Every request is planned by {@link UserSearchPlan} the
+ * same way as a single v2 search, so it takes candidates from the same source and its continue
+ * token and cursor continue it in the next batch search or in a single search.
+ * <p>
+ * Requests whose candidates are selected by the attribute index or by the database are searched
+ * one by one. Requests that filter all the users of the realm in memory are evaluated in a single
+ * pass over users of the realm ordered by username, read by pages of {@value #PAGE_SIZE} users:
+ * every user is checked against the filters of all the requests that still need users, the pass
+ * ends when every paginated request has found its page or when users end.
+ */
+class BatchUserSearch {
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final KeycloakSession session;
+  private final RealmModel realm;
+  private final UserApiDependencies dependencies;
+
+  BatchUserSearch(KeycloakSession session, RealmModel realm, UserApiDependencies dependencies) {
+    this.session = session;
+    this.realm = realm;
+    this.dependencies = dependencies;
+  }
+
+  /**
+   * @param requests named search requests
+   * @return results of the requests by their names
+   * @throws BadRequestException if any of the requests is {@code null}
+   */
+  Map<String, SearchUsersByAttributesResponseDto> search(
+      Map<String, SearchUsersByAttributesRequestDto> requests, SearchRecorder recorder) {
+    requests.forEach((name, requestDto) -> {
+      if (Objects.isNull(requestDto)) {
+        throw new BadRequestException(String.format("Query %s of the batch is empty", name));
+      }
+    });
+    var pages = new HashMap<String, UserSearchPlan.Page>();
+    var scannedQueries = new LinkedHashMap<String, Query>();
+    requests.forEach((name, requestDto) -> {
+      var startCursor = UserApiProvider.getStartCursor(requestDto.getPagination());
+      if (startCursor == null) {
+        // continue token shows that all pages were selected
+        pages.put(name, new UserSearchPlan.Page(List.of(), List.of(), null));
+        return;
+      }
+      var query = new Query(requestDto, startCursor, recorder);
+      if (query.plan.isSeeking()) {
+        pages.put(name, query.plan.findPage(startCursor, query.limit,
+            dependencies.getConfig().getMaxScanBatchSize(), recorder, query.toRepresentation));
+      } else {
+        scannedQueries.put(name, query);
+      }
+    });
+    if (!scannedQueries.isEmpty()) {
+      scan(List.copyOf(scannedQueries.values()), recorder);
+      scannedQueries.forEach((name, query) -> pages.put(name, query.toPage()));
+    }
+    var results = new LinkedHashMap<String, SearchUsersByAttributesResponseDto>();
+    requests.keySet().forEach(name -> results.put(name,
+        SearchUsersByAttributesResponseDto.builder().users(pages.get(name).getUsers())
+            .pagination(pages.get(name).getPagination()).build()));
+    return results;
+  }
+
+  private void scan(List<Query> queries, SearchRecorder recorder) {
+    var startOffset = queries.stream().mapToInt(query -> query.startCursor.getOffset()).min()
+        .orElse(0);
+    var cursor = ContinueCursor.ofOffset(startOffset);
+    var source = UserSearchPlan.scan(session, realm, getAttributeNames(queries));
+    var pageSize = PAGE_SIZE;
+    while (pageSize == PAGE_SIZE && queries.stream().anyMatch(query -> !query.isFilled())) {
+      recorder.iteration();
+      pageSize = 0;
+      try (var users = source.getUsersStream(cursor, PAGE_SIZE)) {
+        var iterator = users.iterator();
+        while (iterator.hasNext() && queries.stream().anyMatch(query -> !query.isFilled())) {
+          var userModel = iterator.next();
+          pageSize++;
+          recorder.scanned();
+          for (var query : queries) {
+            if (query.startCursor.getOffset() <= cursor.getOffset() && !query.isFilled()
+                && query.plan.getFilter().test(userModel)) {
+              recorder.matched();
+              query.accept(userModel, cursor);
+            }
+          }
+          cursor = cursor.advance(userModel);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return names of the attributes read by the filters and the mappers of all the requests or
+   * {@code null} if any mapper reads all the attributes
+   */
+  private static Set<String> getAttributeNames(List<Query> queries) {
+    var attributeNames = new HashSet<String>();
+    for (var query : queries) {
+      var queryAttributeNames = UserSearchPlan.getFilterAttributeNames(query.requestDto,
+          query.mapper);
+      if (Objects.isNull(queryAttributeNames)) {
+        return null;
+      }
+      attributeNames.addAll(queryAttributeNames);
+    }
+    return attributeNames;
+  }
+
+  private class Query {
+
+    private final SearchUsersByAttributesRequestDto requestDto;
+    private final UserRepresentationMapper mapper;
+    private final UserSearchPlan plan;
+    private final ContinueCursor startCursor;
+    private final int limit;
+    private final Function<UserModel, UserRepresentation> toRepresentation;
+    private final List<UserRepresentation> foundUsers = new ArrayList<>();
+    private final List<String> foundUserIds = new ArrayList<>();
+    // position right before the last found user
+    private ContinueCursor lastUserCursor;
+
+    Query(SearchUsersByAttributesRequestDto requestDto, ContinueCursor startCursor,
+        SearchRecorder recorder) {
+      this.requestDto = requestDto;
+      this.mapper = new UserRepresentationMapper(session, realm, requestDto.getProjection());
+      this.plan = UserSearchPlan.of(session, realm, requestDto, mapper, dependencies);
+      // only the single pass needs the offset, seeking plans continue after the username
+      this.startCursor = plan.isSeeking() ? startCursor : plan.resolveOffset(startCursor);
+      var requestLimit = Objects.requireNonNullElse(requestDto.getPagination().getLimit(), 0);
+      // limit less than or equal 0 shows that pagination is disabled
+      this.limit = requestLimit <= 0 ? -1 : requestLimit;
+      this.toRepresentation = recorder.timeMapping(mapper::toRepresentation);
+      this.lastUserCursor = this.startCursor;
+    }
+
+    /**
+     * @return {@code true} if the page and the first user of the next page are found
+     */
+    boolean isFilled() {
+      return limit > 0 && foundUsers.size() > limit;
+    }
+
+    /**
+     * @param userModel matched user
+     * @param cursor    position right before the user
+     */
+    void accept(UserModel userModel, ContinueCursor cursor) {
+      foundUserIds.add(userModel.getId());
+      foundUsers.add(toRepresentation.apply(userModel));
+      lastUserCursor = cursor;
+    }
+
+    UserSearchPlan.Page toPage() {
+      return plan.toPage(foundUsers, foundUserIds, limit, lastUserCursor);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.MatchMode;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.RealmAttributeStats;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import lombok.RequiredArgsConstructor;
+import org.keycloak.models.UserModel;
+
+/**
+ * Attribute filters of {@link SearchUsersByAttributesRequestDto} compiled once per request into
+ * structures that are cheap to check for every scanned user:
+ * <ul>
+ *   <li>{@code attributesEquals} - hash set of the values</li>
+ *   <li>{@code attributesStartsWith} - {@link PrefixTrie} of the values</li>
+ *   <li>{@code attributesThatAreStartFor} - {@link PrefixTrie} of the values, a user value is a
+ *   start for a requested one if the walk of the value over the trie succeeds. With hierarchy
+ *   separator the trie contains the values expanded by {@link PrefixExpander} and a user value
+ *   must match one of them exactly</li>
+ * </ul>
+ * Requested values of attributes with {@link MatchMode match modes} are normalized by
+ * {@link ValueNormalizer} at compile time and user values are normalized before the check.
+ * <p>
+ * Conditions are checked from the most selective one, so most of the users are rejected by the
+ * first condition. If {@link RealmAttributeStats} are available conditions matched by fewer users
+ * go first, otherwise exact matches with fewer values go first and prefix matches go last.
+ */
+public class CompiledUserQuery implements Predicate<UserModel> {
+
+  private static final CompiledUserQuery EMPTY = new CompiledUserQuery(List.of());
+
+  private final List<Condition> conditions;
+
+  private CompiledUserQuery(List<Condition> conditions) {
+    this.conditions = conditions;
+  }
+
+  /**
+   * @param stats statistics of the realm attributes used to check the most selective conditions
+   *              first or {@code null} if they aren't available
+   */
+  public static CompiledUserQuery compile(SearchUsersByAttributesRequestDto requestDto,
+      PrefixExpander prefixExpander, @Nullable RealmAttributeStats stats) {
+    var matchModes = requestDto.getMatchModes();
+    var conditions = new ArrayList<Condition>();
+    requestDto.getAttributesEquals().forEach((name, values) -> {
+      if (!isListEmpty(values)) {
+        var normalizer = ValueNormalizer.of(matchModes.get(name));
+        var valueSet = values.stream().map(normalizer).collect(Collectors.toSet());
+        var estimate = 0L;
+        if (stats != null) {
+          // statistics are collected for the exact values only
+          estimate = matchModes.containsKey(name) ? stats.estimateUsers(name)
+              : stats.estimateUsers(name, values);
+        }
+        conditions.add(new Condition(name, normalized(normalizer, valueSet::contains),
+            valueSet.size(), estimate));
+      }
+    });
+    requestDto.getAttributesThatAreStartFor().forEach((name, values) -> {
+      if (!isListEmpty(values)) {
+        conditions.add(getThatAreStartForCondition(name, values,
+            ValueNormalizer.of(matchModes.get(name)), prefixExpander,
+            stats == null ? 0 : stats.estimateUsers(name)));
+      }
+    });
+    requestDto.getAttributesStartsWith().forEach((name, values) -> {
+      if (!isListEmpty(values)) {
+        var normalizer = ValueNormalizer.of(matchModes.get(name));
+        var prefixes = new PrefixTrie(normalizeAll(values, normalizer));
+        // prefix match is less selective than exact match with the same count of values
+        conditions.add(new Condition(name, normalized(normalizer, prefixes::hasPrefixOf),
+            prefixes.size() * 2, stats == null ? 0 : stats.estimateUsers(name)));
+      }
+    });
+    if (conditions.isEmpty()) {
+      return EMPTY;
+    }
+    conditions.sort(Comparator.<Condition>comparingLong(condition -> condition.estimate)
+        .thenComparingInt(condition -> condition.weight));
+    return new CompiledUserQuery(List.copyOf(conditions));
+  }
+
+  public boolean isEmpty() {
+    return conditions.isEmpty();
+  }
+
+  /**
+   * @return {@code true} if the user has a matching value for every compiled attribute filter
+   */
+  @Override
+  public boolean test(UserModel userModel) {
+    for (var condition : conditions) {
+      if (userModel.getAttributeStream(condition.name).noneMatch(condition.values)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Condition getThatAreStartForCondition(String name, List<String> values,
+      ValueNormalizer normalizer, PrefixExpander prefixExpander, long estimate) {
+    var normalizedValues = normalizeAll(values, normalizer);
+    if (prefixExpander.isSeparatorAware()) {
+      // only starts that end on a segment boundary match, so they're matched exactly
+      var starts = new PrefixTrie(normalizedValues.stream()
+          .flatMap(value -> prefixExpander.expand(value).stream())
+          .collect(Collectors.toList()));
+      return new Condition(name, normalized(normalizer, starts::contains), starts.size(),
+          estimate);
+    }
+    var trie = new PrefixTrie(normalizedValues);
+    return new Condition(name, normalized(normalizer, trie::isPrefixOfAny), trie.size() * 2,
+        estimate);
+  }
+
+  private static List<String> normalizeAll(List<String> values, ValueNormalizer normalizer) {
+    return normalizer.isIdentity() ? values
+        : values.stream().map(normalizer).collect(Collectors.toList());
+  }
+
+  /**
+   * @return predicate that normalizes user values before the check
+   */
+  private static Predicate<String> normalized(ValueNormalizer normalizer,
+      Predicate<String> predicate) {
+    return normalizer.isIdentity() ? predicate
+        : value -> predicate.test(normalizer.apply(value));
+  }
+
+  private static boolean isListEmpty(List<String> list) {
+    return Objects.isNull(list) || list.isEmpty();
+  }
+
+  @RequiredArgsConstructor
+  private static class Condition {
+
+    private final String name;
+    private final Predicate<String> values;
+    private final int weight;
+    /**
+     * Estimated count of users that match the condition, 0 if it isn't known
+     */
+    private final long estimate;
+  }
+}
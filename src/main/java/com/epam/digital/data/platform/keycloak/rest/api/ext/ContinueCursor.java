@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.annotation.Nullable;
+import javax.ws.rs.BadRequestException;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.keycloak.models.UserModel;
+
+/**
+ * Position in the stream of users of the realm ordered by username. Carries both the count of
+ * already processed users of the realm (legacy integer continue token) and username of the last
+ * processed user, so the next page can be selected by a seek query ({@code username > ?}) instead
+ * of an offset. Sources that seek by username don't know the offset, it's resolved by
+ * {@link RealmUserPositions} only if the client paginates by the legacy continue token, a cursor
+ * with unknown offset carries only the username.
+ * <p>
+ * Encoded into an opaque URL-safe string that is returned to clients as {@code cursor}. The
+ * encoding is versioned, cursors of the first version ({@code offset} or
+ * {@code offset:username}) are still accepted. An offset of the first version counted only the
+ * matched users when the page was selected by the database, so the offset of a cursor with a
+ * username isn't trusted and the username is used instead.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ContinueCursor {
+
+  static final int UNKNOWN_OFFSET = -1;
+
+  private static final String VERSION_PREFIX = "v2:";
+  private static final char SEPARATOR = ':';
+
+  /**
+   * Count of the processed users of the realm or {@link #UNKNOWN_OFFSET}
+   */
+  private final int offset;
+  @Nullable
+  private final String lastUsername;
+
+  public static ContinueCursor start() {
+    return new ContinueCursor(0, null);
+  }
+
+  public static ContinueCursor ofOffset(int offset) {
+    return new ContinueCursor(offset, null);
+  }
+
+  /**
+   * @param offset       count of the processed users of the realm or {@link #UNKNOWN_OFFSET}
+   * @param lastUsername username of the last processed user or {@code null} if unknown
+   */
+  public static ContinueCursor of(int offset, @Nullable String lastUsername) {
+    return new ContinueCursor(offset, lastUsername);
+  }
+
+  /**
+   * @param lastUsername username of the last processed user
+   * @return position right after the user with unknown offset
+   */
+  public static ContinueCursor afterUsername(String lastUsername) {
+    return new ContinueCursor(UNKNOWN_OFFSET, lastUsername);
+  }
+
+  /**
+   * @param encoded cursor previously returned by {@link ContinueCursor#encode()}
+   * @return decoded cursor
+   * @throws BadRequestException if the cursor is malformed
+   */
+  public static ContinueCursor decode(String encoded) {
+    try {
+      var decoded = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+      var versioned = decoded.startsWith(VERSION_PREFIX);
+      if (versioned) {
+        decoded = decoded.substring(VERSION_PREFIX.length());
+      }
+      var separatorIndex = decoded.indexOf(SEPARATOR);
+      if (separatorIndex < 0) {
+        return ofOffset(parseOffset(decoded));
+      }
+      var lastUsername = decoded.substring(separatorIndex + 1);
+      if (versioned && separatorIndex == 0) {
+        return afterUsername(lastUsername);
+      }
+      var offset = parseOffset(decoded.substring(0, separatorIndex));
+      return versioned ? new ContinueCursor(offset, lastUsername) : afterUsername(lastUsername);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("Malformed pagination cursor");
+    }
+  }
+
+  private static int parseOffset(String offset) {
+    var parsed = Integer.parseInt(offset);
+    if (parsed < 0) {
+      throw new IllegalArgumentException("Negative offset " + parsed);
+    }
+    return parsed;
+  }
+
+  public boolean hasOffset() {
+    return offset != UNKNOWN_OFFSET;
+  }
+
+  public boolean hasLastUsername() {
+    return lastUsername != null;
+  }
+
+  /**
+   * @param userModel processed user
+   * @return position right after the processed user, the offset stays unknown if it's unknown
+   */
+  public ContinueCursor advance(UserModel userModel) {
+    return new ContinueCursor(hasOffset() ? offset + 1 : UNKNOWN_OFFSET, userModel.getUsername());
+  }
+
+  /**
+   * @throws IllegalStateException if both the offset and the username are unknown
+   */
+  public String encode() {
+    if (!hasOffset() && !hasLastUsername()) {
+      throw new IllegalStateException("Position of the cursor is unknown");
+    }
+    var encodedOffset = hasOffset() ? String.valueOf(offset) : "";
+    var raw = VERSION_PREFIX + (hasLastUsername() ? encodedOffset + SEPARATOR + lastUsername
+        : encodedOffset);
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+import javax.ws.rs.core.StreamingOutput;
+import org.keycloak.util.JsonSerialization;
+
+/**
+ * Writes a stream of objects as newline delimited JSON, one object per line. Objects are
+ * serialized one by one while the stream is consumed, so memory usage doesn't depend on the count
+ * of objects.
+ */
+public class NdjsonStreamingOutput implements StreamingOutput {
+
+  public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+  private static final ObjectWriter WRITER = JsonSerialization.mapper.writer()
+      .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+      .without(SerializationFeature.INDENT_OUTPUT);
+
+  private final Stream<?> objects;
+
+  public NdjsonStreamingOutput(Stream<?> objects) {
+    this.objects = objects;
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    try (objects; var generator = WRITER.createGenerator(output)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      // lines are separated explicitly, so no separator between root values is needed
+      generator.setRootValueSeparator(null);
+      objects.forEachOrdered(object -> {
+        try {
+          WRITER.writeValue(generator, object);
+          generator.writeRaw('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserSearchPlan.UserPageSource;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.SearchRecorder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/**
+ * Reads and filters the next pages of candidate users concurrently, every page in its own
+ * session and transaction, and merges the matched users in the source order. Used by v2 search
+ * when the filters are checked in memory, so sparse filters don't have to walk through the pages
+ * one by one in the request thread.
+ * <p>
+ * Pages are requested at the same offsets as by the sequential search and every matched user
+ * carries the cursor right before them, so continue tokens and cursors are exactly the same.
+ */
+public class ParallelPageScanner {
+
+  private static final int MIN_PAGE_SIZE = 100;
+
+  private final int pages;
+  private KeycloakSessionFactory sessionFactory;
+  private ExecutorService executor;
+
+  /**
+   * @param pages count of pages read concurrently, also the count of the scanning threads shared
+   *              by all the searches. If 0 then pages are read sequentially
+   */
+  public ParallelPageScanner(int pages) {
+    this.pages = pages;
+  }
+
+  public static ParallelPageScanner disabled() {
+    return new ParallelPageScanner(0);
+  }
+
+  public boolean isEnabled() {
+    return pages > 0 && executor != null;
+  }
+
+  public void start(KeycloakSessionFactory sessionFactory) {
+    if (pages <= 0) {
+      return;
+    }
+    this.sessionFactory = sessionFactory;
+    this.executor = Executors.newFixedThreadPool(pages, runnable -> {
+      var thread = new Thread(runnable, "users-search-scan");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Scans users from the start cursor until enough users are matched or the source is exhausted.
+   *
+   * @param source     opens the source of candidate users in the session of a page
+   * @param filter     filter of the candidate users, must be thread safe
+   * @param start      position to start the scan from
+   * @param pageSize   count of users requested from the source at once
+   * @param maxMatches count of matched users to stop the scan at
+   * @return matched users in the source order, at most {@code maxMatches}
+   */
+  List<Match> scan(Function<KeycloakSession, UserPageSource> source,
+      Predicate<UserModel> filter, ContinueCursor start, int pageSize, int maxMatches,
+      SearchRecorder recorder) {
+    var size = Math.max(pageSize, MIN_PAGE_SIZE);
+    var inFlight = new ArrayDeque<Future<Page>>();
+    var nextOffset = start.getOffset();
+    var lastUsername = start.getLastUsername();
+    var matches = new ArrayList<Match>();
+    try {
+      while (true) {
+        while (inFlight.size() < pages) {
+          var offset = nextOffset;
+          inFlight.add(executor.submit(() -> readPage(source, filter, offset, size)));
+          nextOffset += size;
+        }
+        recorder.iteration();
+        var page = inFlight.poll().get();
+        for (var i = 0; i < page.scanned; i++) {
+          recorder.scanned();
+        }
+        for (var match : page.matches) {
+          recorder.matched();
+          // the user before the first user of the page is the last user of the previous page
+          matches.add(match.cursor.hasLastUsername() ? match : new Match(match.userId,
+              ContinueCursor.of(match.cursor.getOffset(), lastUsername)));
+          if (matches.size() >= maxMatches) {
+            return matches;
+          }
+        }
+        if (page.scanned == 0) {
+          return matches;
+        }
+        lastUsername = page.lastUsername;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Users search was interrupted", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+          : new IllegalStateException(e.getCause());
+    } finally {
+      // pages read ahead aren't needed, running ones are left to complete their transactions
+      inFlight.forEach(future -> future.cancel(false));
+    }
+  }
+
+  private Page readPage(Function<KeycloakSession, UserPageSource> source,
+      Predicate<UserModel> filter, int offset, int size) {
+    var page = new Page();
+    KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+      var pageSource = source.apply(session);
+      try (var users = pageSource.getUsersStream(ContinueCursor.ofOffset(offset), size)) {
+        String previousUsername = null;
+        for (var iterator = users.iterator(); iterator.hasNext(); ) {
+          var user = iterator.next();
+          if (filter.test(user)) {
+            page.matches.add(new Match(user.getId(),
+                ContinueCursor.of(offset + page.scanned, previousUsername)));
+          }
+          previousUsername = user.getUsername();
+          page.scanned++;
+        }
+        page.lastUsername = previousUsername;
+      }
+    });
+    return page;
+  }
+
+  private static class Page {
+
+    private final List<Match> matches = new ArrayList<>();
+    private int scanned;
+    private String lastUsername;
+  }
+
+  /**
+   * User matched by the scan and the position right before the user.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  static class Match {
+
+    private final String userId;
+    private final ContinueCursor cursor;
+  }
+}
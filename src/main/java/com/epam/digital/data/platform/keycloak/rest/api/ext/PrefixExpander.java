@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Expands requested values of {@code attributesThatAreStartFor} into all the values that are start
+ * for them. A user attribute value is a start for a requested value only if it's one of these
+ * candidates, so the search turns into an exact match that can use an index.
+ * <p>
+ * Without separator all the character prefixes are the candidates, e.g. {@code 100.2} is expanded
+ * into {@code "", 1, 10, 100, 100., 100.2}. With separator only prefixes that end on a segment
+ * boundary are the candidates, e.g. {@code 100.200.300} with separator {@code .} is expanded into
+ * {@code 100, 100.200, 100.200.300}.
+ */
+public class PrefixExpander {
+
+  private final String separator;
+
+  /**
+   * @param separator separator of the hierarchy segments, if {@code null} or empty then values are
+   *                  expanded into all the character prefixes
+   */
+  public PrefixExpander(@Nullable String separator) {
+    this.separator = Objects.requireNonNullElse(separator, "");
+  }
+
+  public boolean isSeparatorAware() {
+    return !separator.isEmpty();
+  }
+
+  /**
+   * Expands the value into values that are start for it.
+   *
+   * @param value requested value
+   * @return set of candidate values ordered from the shortest to the longest
+   */
+  public Set<String> expand(String value) {
+    var candidates = new LinkedHashSet<String>();
+    if (separator.isEmpty()) {
+      for (var i = 0; i <= value.length(); i++) {
+        candidates.add(value.substring(0, i));
+      }
+      return candidates;
+    }
+    var index = value.indexOf(separator);
+    while (index >= 0) {
+      candidates.add(value.substring(0, index));
+      index = value.indexOf(separator, index + separator.length());
+    }
+    candidates.add(value);
+    return candidates;
+  }
+
+  /**
+   * Expands all the values of the attributes. Attributes without values are skipped as they don't
+   * restrict the search.
+   *
+   * @param attributesThatAreStartFor requested attributes
+   * @return map of attribute names to all the candidate values of the attribute
+   */
+  public Map<String, List<String>> expand(Map<String, List<String>> attributesThatAreStartFor) {
+    var expanded = new HashMap<String, List<String>>();
+    attributesThatAreStartFor.forEach((name, values) -> {
+      if (values != null && !values.isEmpty()) {
+        expanded.put(name, new ArrayList<>(expandAll(values)));
+      }
+    });
+    return expanded;
+  }
+
+  private Set<String> expandAll(Collection<String> values) {
+    var candidates = new LinkedHashSet<String>();
+    values.forEach(value -> candidates.addAll(expand(value)));
+    return candidates;
+  }
+}
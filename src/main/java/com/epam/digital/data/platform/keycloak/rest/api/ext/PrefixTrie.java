@@ -0,0 +1,179 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable radix trie of strings. Checks whether a value starts with any of the strings or is a
+ * start for any of them in a single walk over the characters of the value, i.e. in O(value length)
+ * regardless of how many strings the trie contains.
+ * <p>
+ * Every edge of the trie is labeled with a chain of characters, so nodes exist only where the
+ * strings branch or end.
+ */
+public class PrefixTrie {
+
+  private final Node root = new Node("");
+  private int size;
+
+  public PrefixTrie(Collection<String> values) {
+    values.forEach(this::add);
+  }
+
+  /**
+   * @return count of distinct strings in the trie
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return {@code true} if the value starts with any of the strings
+   */
+  public boolean hasPrefixOf(String value) {
+    var node = root;
+    var index = 0;
+    while (!node.terminal) {
+      if (index == value.length()) {
+        return false;
+      }
+      node = node.child(value.charAt(index));
+      if (node == null || !value.startsWith(node.label, index)) {
+        return false;
+      }
+      index += node.label.length();
+    }
+    return true;
+  }
+
+  /**
+   * @return {@code true} if any of the strings starts with the value
+   */
+  public boolean isPrefixOfAny(String value) {
+    if (size == 0) {
+      return false;
+    }
+    var node = root;
+    var index = 0;
+    while (index < value.length()) {
+      node = node.child(value.charAt(index));
+      if (node == null) {
+        return false;
+      }
+      var length = Math.min(node.label.length(), value.length() - index);
+      if (!value.regionMatches(index, node.label, 0, length)) {
+        return false;
+      }
+      index += length;
+    }
+    // every node of the trie leads to at least one of the strings
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the value is one of the strings
+   */
+  public boolean contains(String value) {
+    var node = root;
+    var index = 0;
+    while (index < value.length()) {
+      node = node.child(value.charAt(index));
+      if (node == null || !value.startsWith(node.label, index)) {
+        return false;
+      }
+      index += node.label.length();
+    }
+    return node.terminal;
+  }
+
+  private void add(String value) {
+    var node = root;
+    var index = 0;
+    while (index < value.length()) {
+      var child = node.child(value.charAt(index));
+      if (child == null) {
+        child = new Node(value.substring(index));
+        node.addChild(child);
+        node = child;
+        break;
+      }
+      var common = commonPrefixLength(child.label, value, index);
+      if (common < child.label.length()) {
+        // split the edge where the value branches off it
+        var middle = new Node(child.label.substring(0, common));
+        child.label = child.label.substring(common);
+        middle.addChild(child);
+        node.replaceChild(middle);
+        child = middle;
+      }
+      node = child;
+      index += common;
+    }
+    if (!node.terminal) {
+      node.terminal = true;
+      size++;
+    }
+  }
+
+  private static int commonPrefixLength(String label, String value, int offset) {
+    var length = Math.min(label.length(), value.length() - offset);
+    var common = 0;
+    while (common < length && label.charAt(common) == value.charAt(offset + common)) {
+      common++;
+    }
+    return common;
+  }
+
+  private static class Node {
+
+    private String label;
+    private boolean terminal;
+    // children are sorted by the first character of their labels
+    private char[] firstChars = new char[0];
+    private Node[] children = new Node[0];
+
+    private Node(String label) {
+      this.label = label;
+    }
+
+    private Node child(char firstChar) {
+      var index = Arrays.binarySearch(firstChars, firstChar);
+      return index < 0 ? null : children[index];
+    }
+
+    private void addChild(Node child) {
+      var firstChar = child.label.charAt(0);
+      var index = -Arrays.binarySearch(firstChars, firstChar) - 1;
+      var newFirstChars = new char[firstChars.length + 1];
+      var newChildren = new Node[children.length + 1];
+      System.arraycopy(firstChars, 0, newFirstChars, 0, index);
+      System.arraycopy(children, 0, newChildren, 0, index);
+      newFirstChars[index] = firstChar;
+      newChildren[index] = child;
+      System.arraycopy(firstChars, index, newFirstChars, index + 1, firstChars.length - index);
+      System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+      firstChars = newFirstChars;
+      children = newChildren;
+    }
+
+    private void replaceChild(Node child) {
+      children[Arrays.binarySearch(firstChars, child.label.charAt(0))] = child;
+    }
+  }
+}
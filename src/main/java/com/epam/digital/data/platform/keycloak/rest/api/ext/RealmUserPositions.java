@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.RealmAttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.JpaUserSearch;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Converts positions in the users of the realm ordered by username between the count of the
+ * preceding users and the username of the last preceding user. Continue tokens count all the
+ * searched users of the realm, as they did before the filters were pushed down to the database,
+ * while the database selects pages by username.
+ * <p>
+ * If users of the realm are stored in the database then the users are counted by a single query,
+ * otherwise they're counted in the attribute index of the realm if it's built or read through the
+ * user providers by pages up to the username.
+ */
+class RealmUserPositions {
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final KeycloakSession session;
+  private final RealmModel realm;
+  @Nullable
+  private final RealmAttributeIndex realmIndex;
+
+  /**
+   * @param realmIndex attribute index of the realm or {@code null} if it isn't built
+   */
+  RealmUserPositions(KeycloakSession session, RealmModel realm,
+      @Nullable RealmAttributeIndex realmIndex) {
+    this.session = session;
+    this.realm = realm;
+    this.realmIndex = realmIndex;
+  }
+
+  /**
+   * @return the same position with the known offset
+   */
+  ContinueCursor resolveOffset(ContinueCursor cursor) {
+    if (cursor.hasOffset()) {
+      return cursor;
+    }
+    return ContinueCursor.of(countUpTo(cursor.getLastUsername()), cursor.getLastUsername());
+  }
+
+  /**
+   * @return the same position with the known username of the last processed user, the username is
+   * {@code null} at the start. Empty if the offset is beyond the last user of the realm
+   */
+  Optional<ContinueCursor> resolveLastUsername(ContinueCursor cursor) {
+    if (cursor.hasLastUsername() || cursor.getOffset() == 0) {
+      return Optional.of(cursor);
+    }
+    return session.users().getUsersStream(realm, cursor.getOffset() - 1, 1)
+        .findFirst()
+        .map(userModel -> ContinueCursor.of(cursor.getOffset(), userModel.getUsername()));
+  }
+
+  private int countUpTo(String username) {
+    if (JpaUserSearch.isSupported(session, realm)) {
+      return (int) new JpaUserSearch(session, realm, Map.of(), 0).countUsersUpTo(username);
+    }
+    if (realmIndex != null) {
+      return realmIndex.countUsersUpTo(username);
+    }
+    var count = 0;
+    for (var first = 0; ; first += PAGE_SIZE) {
+      var usernames = session.users().getUsersStream(realm, first, PAGE_SIZE)
+          .map(UserModel::getUsername)
+          .collect(Collectors.toList());
+      for (var pageUsername : usernames) {
+        if (pageUsername.compareTo(username) > 0) {
+          return count;
+        }
+        count++;
+      }
+      if (usernames.size() < PAGE_SIZE) {
+        return count;
+      }
+    }
+  }
+}
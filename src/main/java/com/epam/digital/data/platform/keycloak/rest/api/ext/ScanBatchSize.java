@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+/**
+ * Count of candidate users requested from the user source at once by the v2 search loop. Starts
+ * with the response page size plus one and grows geometrically while most of the candidates are
+ * filtered out, so sparse filters with small pages don't make a round trip per a few users. Batch
+ * size doesn't change the found users: users after the filled page are not processed and the next
+ * batch continues from the last processed user.
+ */
+class ScanBatchSize {
+
+  static final int DEFAULT_MAX = 1000;
+
+  private static final int GROWTH_FACTOR = 4;
+
+  private final int max;
+  private int size;
+
+  /**
+   * @param initial size of the first batch, usually the response page size
+   * @param max     max size of a batch, it isn't grown beyond it
+   */
+  ScanBatchSize(int initial, int max) {
+    this.size = initial;
+    this.max = Math.max(initial, max);
+  }
+
+  int get() {
+    return size;
+  }
+
+  /**
+   * Grows the batch if the last batch was full and less than half of its users matched. Batch
+   * without limit isn't changed.
+   *
+   * @param scanned count of users read from the source
+   * @param matched count of users that matched the filters
+   */
+  void observe(int scanned, int matched) {
+    if (size > 0 && scanned >= size && matched * 2 < scanned) {
+      size = (int) Math.min((long) size * GROWTH_FACTOR, max);
+    }
+  }
+}
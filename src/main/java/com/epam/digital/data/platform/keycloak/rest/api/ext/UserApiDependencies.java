@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.cache.SearchResultCache;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.changelog.UserChangeLog;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.AttributeStatistics;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Configuration and node-wide components shared by all the {@link UserApiProvider} instances.
+ * Built once by {@link UserApiProviderFactory}, components that aren't set are disabled.
+ */
+@Builder(toBuilder = true)
+@Getter
+public class UserApiDependencies {
+
+  @Builder.Default
+  private final UserFilter userFilter = new UserFilter();
+  @Builder.Default
+  private final UserApiProviderConfig config = UserApiProviderConfig.defaults();
+  @Builder.Default
+  private final UserApiMetrics metrics = UserApiMetrics.NOOP;
+  @Builder.Default
+  private final AttributeIndex attributeIndex = AttributeIndex.disabled();
+  @Builder.Default
+  private final SearchResultCache searchResultCache = SearchResultCache.disabled();
+  @Builder.Default
+  private final ParallelPageScanner pageScanner = ParallelPageScanner.disabled();
+  @Builder.Default
+  private final UserChangeLog userChangeLog = UserChangeLog.disabled();
+  @Builder.Default
+  private final AsyncSearchExecutor asyncSearchExecutor = AsyncSearchExecutor.disabled();
+  @Builder.Default
+  private final AttributeStatistics attributeStatistics = AttributeStatistics.disabled();
+
+  public static UserApiDependencies defaults() {
+    return UserApiDependencies.builder().build();
+  }
+}
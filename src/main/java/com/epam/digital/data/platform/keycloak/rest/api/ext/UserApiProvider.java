@@ -16,26 +16,50 @@
 
 package com.epam.digital.data.platform.keycloak.rest.api.ext;
 
+import com.epam.digital.data.platform.keycloak.rest.api.ext.cache.SearchResultCache;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.changelog.UserChangeLog;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.SearchUserRequestDto;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.SearchUsersByEqualsAndStartsWithAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.AttributeStatsResponseDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.AttributeStatsResponseDto.AttributeStatsDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.BatchSearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.BatchSearchUsersByAttributesResponseDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.CountUsersByAttributesResponseDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUserChangesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUserChangesResponseDto;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.Projection;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto.Pagination;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.JpaUserSearch;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.UserAttributeBatchLoader;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.Endpoint;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.AttributeStatistics;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.ws.rs.Encoded;
 import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.StreamingOutput;
 import org.jboss.resteasy.annotations.cache.NoCache;
 import org.jboss.resteasy.spi.HttpRequest;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.ModelToRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
@@ -45,11 +69,35 @@ import org.keycloak.utils.MediaType;
 
 public class UserApiProvider extends AdminRoot implements RealmResourceProvider {
 
+  private static final long ATTRIBUTE_STATS_RETRY_AFTER_SECONDS = 5;
+
+  private final UserApiDependencies dependencies;
   private final UserFilter userFilter;
+  private final UserApiProviderConfig config;
+  private final UserApiMetrics metrics;
+  private final AttributeIndex attributeIndex;
+  private final SearchResultCache searchResultCache;
+  private final ParallelPageScanner pageScanner;
+  private final UserChangeLog userChangeLog;
+  private final AsyncSearchExecutor asyncSearchExecutor;
+  private final AttributeStatistics attributeStatistics;
 
   public UserApiProvider(KeycloakSession session, UserFilter userFilter) {
+    this(session, UserApiDependencies.builder().userFilter(userFilter).build());
+  }
+
+  public UserApiProvider(KeycloakSession session, UserApiDependencies dependencies) {
     this.session = session;
-    this.userFilter = userFilter;
+    this.dependencies = dependencies;
+    this.userFilter = dependencies.getUserFilter();
+    this.config = dependencies.getConfig();
+    this.metrics = dependencies.getMetrics();
+    this.attributeIndex = dependencies.getAttributeIndex();
+    this.searchResultCache = dependencies.getSearchResultCache();
+    this.pageScanner = dependencies.getPageScanner();
+    this.userChangeLog = dependencies.getUserChangeLog();
+    this.asyncSearchExecutor = dependencies.getAsyncSearchExecutor();
+    this.attributeStatistics = dependencies.getAttributeStatistics();
   }
 
   public void close() {
@@ -74,8 +122,39 @@ public class UserApiProvider extends AdminRoot implements RealmResourceProvider
       SearchUserRequestDto requestDto) {
     authenticateRealmAdminRequest(request.getHttpHeaders());
     validateRequestRealm(request, session.getContext().getRealm().getName());
-    return toRepresentation(
-        userFilter.filterUsersByAttributesEquals(session, requestDto.attributes));
+    var recorder = metrics.start(Endpoint.SEARCH);
+    try {
+      return toRepresentation(recorder.countMatched(
+          userFilter.filterUsersByAttributesEquals(session, requestDto.attributes,
+              attributeIndex, attributeStatistics)));
+    } finally {
+      recorder.stop();
+    }
+  }
+
+  /**
+   * Same as {@link UserApiProvider#searchUsersByAttributes(HttpRequest, SearchUserRequestDto)} but
+   * writes found users as newline delimited JSON while they are found.
+   *
+   * @deprecated Use
+   * {@link UserApiProvider#streamUsersByAttributes(HttpRequest, SearchUsersByAttributesRequestDto)}
+   * instead
+   */
+  @Deprecated(forRemoval = true)
+  @POST
+  @Path("search/stream")
+  @NoCache
+  @Produces({NdjsonStreamingOutput.APPLICATION_NDJSON})
+  @Encoded
+  public StreamingOutput streamUsersByAttributes(@Context final HttpRequest request,
+      SearchUserRequestDto requestDto) {
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, session.getContext().getRealm().getName());
+    var recorder = metrics.start(Endpoint.SEARCH_STREAM);
+    return new NdjsonStreamingOutput(toRepresentationStream(recorder.countMatched(
+        userFilter.filterUsersByAttributesEquals(session, requestDto.attributes,
+            attributeIndex, attributeStatistics)))
+        .onClose(recorder::stop));
   }
 
   /**
@@ -93,21 +172,65 @@ public class UserApiProvider extends AdminRoot implements RealmResourceProvider
       SearchUsersByEqualsAndStartsWithAttributesRequestDto requestDto) {
     authenticateRealmAdminRequest(request.getHttpHeaders());
     validateRequestRealm(request, session.getContext().getRealm().getName());
+    var recorder = metrics.start(Endpoint.SEARCH_BY_ATTRIBUTES);
+    try {
+      return toRepresentation(recorder.countMatched(findUsers(requestDto)));
+    } finally {
+      recorder.stop();
+    }
+  }
+
+  /**
+   * Same as
+   * {@link UserApiProvider#searchUsersByAttributes(HttpRequest,
+   * SearchUsersByEqualsAndStartsWithAttributesRequestDto)} but writes found users as newline
+   * delimited JSON while they are found.
+   *
+   * @deprecated Use
+   * {@link UserApiProvider#streamUsersByAttributes(HttpRequest, SearchUsersByAttributesRequestDto)}
+   * instead
+   */
+  @Deprecated(forRemoval = true)
+  @POST
+  @Path("search-by-attributes/stream")
+  @NoCache
+  @Produces({NdjsonStreamingOutput.APPLICATION_NDJSON})
+  @Encoded
+  public StreamingOutput streamUsersByAttributes(@Context final HttpRequest request,
+      SearchUsersByEqualsAndStartsWithAttributesRequestDto requestDto) {
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, session.getContext().getRealm().getName());
+    var recorder = metrics.start(Endpoint.SEARCH_BY_ATTRIBUTES_STREAM);
+    return new NdjsonStreamingOutput(
+        toRepresentationStream(recorder.countMatched(findUsers(requestDto)))
+            .onClose(recorder::stop));
+  }
+
+  private Stream<UserModel> findUsers(
+      SearchUsersByEqualsAndStartsWithAttributesRequestDto requestDto) {
     if (requestDto.attributesEquals == null || requestDto.attributesEquals.isEmpty()) {
-      var userModels = userFilter.filterUsersByAttributesInvertedStartsWith(
-          session.users().getUsersStream(session.getContext().getRealm()),
-          requestDto.attributesStartsWith);
-      return toRepresentation(userModels);
+      if (requestDto.attributesStartsWith == null || requestDto.attributesStartsWith.isEmpty()) {
+        return Stream.empty();
+      }
+      // the same filter as attributesThatAreStartFor of v2 search without hierarchy separator, so
+      // the database, the index or the prefix expansion are used instead of reading the whole
+      // realm at once. The rest of the node configuration applies as for v2 search
+      final var realm = session.getContext().getRealm();
+      final var v2RequestDto = new SearchUsersByAttributesRequestDto();
+      v2RequestDto.setAttributesThatAreStartFor(requestDto.attributesStartsWith);
+      final var legacyConfig = config.toBuilder().hierarchySeparator(null).build();
+      return UserSearchPlan.of(session, realm, v2RequestDto,
+              new UserRepresentationMapper(session, realm, null),
+              dependencies.toBuilder().config(legacyConfig).build())
+          .streamInChunks(config.getMaxScanBatchSize());
     }
     if (requestDto.attributesStartsWith == null || requestDto.attributesStartsWith.isEmpty()) {
-      return toRepresentation(
-          userFilter.filterUsersByAttributesEquals(session, requestDto.attributesEquals));
+      return userFilter.filterUsersByAttributesEquals(session, requestDto.attributesEquals);
     }
 
     var userModels = userFilter.filterUsersByAttributesEquals(session, requestDto.attributesEquals);
-    userModels = userFilter.filterUsersByAttributesInvertedStartsWith(userModels,
+    return userFilter.filterUsersByAttributesInvertedStartsWith(userModels,
         requestDto.attributesStartsWith);
-    return toRepresentation(userModels);
   }
 
   /**
@@ -119,6 +242,22 @@ public class UserApiProvider extends AdminRoot implements RealmResourceProvider
    * users with {@code continueToken=-1}. If 0 or {@code null} was passed as continue token it will
    * return first page. If 0 or {@code null} was passed as {@code limit} then pagination is disabled
    * and request will return all found users.
+   * <p>
+   * Along with continue token any response but the last page provides an opaque {@code cursor}
+   * that carries the last processed username. If it's passed instead of continue token the next
+   * page is selected by seeking after that username rather than by offset, so deep pages cost the
+   * same as the first one. {@code cursor} takes precedence over {@code continueToken} and is
+   * {@code null} on the last page. Responses to requests with {@code cursor} don't count the
+   * users before the next page, so their {@code continueToken} is {@code null} unless the offset
+   * is known without counting, and is still -1 on the last page.
+   * <p>
+   * If users of the realm are stored in the database (no user federation is configured) then the
+   * attributes are filtered by the database and pages are selected by username. Continue token
+   * still counts all the users of the realm before the next page, so tokens of the previous
+   * versions keep their meaning.
+   * <p>
+   * If {@code projection} is set then only requested fields and attributes of the found users are
+   * returned, that is considerably cheaper than building the full user representation.
    *
    * @param request    The http request itself
    * @param requestDto {@link SearchUsersByAttributesRequestDto} representation of request body
@@ -189,65 +328,376 @@ public class UserApiProvider extends AdminRoot implements RealmResourceProvider
     final var realm = session.getContext().getRealm();
     authenticateRealmAdminRequest(request.getHttpHeaders());
     validateRequestRealm(request, realm.getName());
+    return searchUsersByAttributes(realm, requestDto);
+  }
+
+  /**
+   * Same search as
+   * {@link UserApiProvider#searchUsersByAttributes(HttpRequest, SearchUsersByAttributesRequestDto)}
+   * but the search is run in a separate session on a bounded pool of threads and the request
+   * thread is released while the search runs. If the pool and its queue are busy the request is
+   * rejected with {@code 503 Service Unavailable} and the client should retry later.
+   *
+   * @param request    The http request itself
+   * @param requestDto {@link SearchUsersByAttributesRequestDto} representation of request body
+   * @param response   response resumed with {@link SearchUsersByAttributesResponseDto} when the
+   *                   search is completed
+   */
+  @POST
+  @Path("v2/search-by-attributes/async")
+  @NoCache
+  @Produces({MediaType.APPLICATION_JSON})
+  @Encoded
+  public void searchUsersByAttributesAsync(@Context final HttpRequest request,
+      SearchUsersByAttributesRequestDto requestDto, @Suspended final AsyncResponse response) {
+    final var realm = session.getContext().getRealm();
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, realm.getName());
+
+    if (!asyncSearchExecutor.isEnabled()) {
+      response.resume(searchUsersByAttributes(realm, requestDto));
+      return;
+    }
+    final var realmId = realm.getId();
+    asyncSearchExecutor.submit(response, searchSession -> {
+      final var searchRealm = searchSession.realms().getRealm(realmId);
+      searchSession.getContext().setRealm(searchRealm);
+      return new UserApiProvider(searchSession, dependencies)
+          .searchUsersByAttributes(searchRealm, requestDto);
+    });
+  }
 
-    final var continueToken = new AtomicInteger(
-        Objects.requireNonNullElse(requestDto.getPagination().getContinueToken(), 0));
-    if (continueToken.get() < 0) {
+  private SearchUsersByAttributesResponseDto searchUsersByAttributes(RealmModel realm,
+      SearchUsersByAttributesRequestDto requestDto) {
+    final var startCursor = getStartCursor(requestDto.getPagination());
+    if (startCursor == null) {
       // continue token shows that all pages were selected
       return SearchUsersByAttributesResponseDto.builder().users(List.of())
           .pagination(Pagination.builder().continueToken(-1).build()).build();
     }
 
-    final var limit = new AtomicInteger(
-        Objects.requireNonNullElse(requestDto.getPagination().getLimit(), 0));
-    if (limit.get() <= 0) {
-      // limit set to null of less than or equal 0 shows that pagination is disabled
-      limit.set(-1);
+    final var requestLimit = Objects.requireNonNullElse(requestDto.getPagination().getLimit(), 0);
+    // limit set to null of less than or equal 0 shows that pagination is disabled
+    final var limit = requestLimit <= 0 ? -1 : requestLimit;
+
+    // key is built before the search, so users changed during the search invalidate the result
+    final var cacheKey = searchResultCache.keyOf(realm, requestDto);
+    final var recorder = metrics.start(Endpoint.V2_SEARCH_BY_ATTRIBUTES);
+    recorder.pageSize(limit);
+    try {
+      final var mapper = new UserRepresentationMapper(session, realm, requestDto.getProjection());
+      final var cachedPage = cacheKey == null ? null : searchResultCache.get(cacheKey);
+      if (cachedPage != null) {
+        return SearchUsersByAttributesResponseDto.builder()
+            .users(getUsersByIds(realm, cachedPage.getUserIds()).stream()
+                // cached users are read and returned without filtering
+                .peek(userModel -> {
+                  recorder.scanned();
+                  recorder.matched();
+                })
+                .map(recorder.timeMapping(mapper::toRepresentation))
+                .collect(Collectors.toList()))
+            .pagination(cachedPage.getPagination())
+            .build();
+      }
+
+      final var searchPlan = UserSearchPlan.of(session, realm, requestDto, mapper, dependencies);
+      final var toRepresentation = recorder.timeMapping(mapper::toRepresentation);
+      final UserSearchPlan.Page page;
+      if (limit > 0 && searchPlan.getDetachedSource() != null && pageScanner.isEnabled()) {
+        // read and filter the next pages concurrently, only matched users are read here
+        final var matches = pageScanner.scan(searchPlan.getDetachedSource(),
+            searchPlan.getFilter(), searchPlan.resolveOffset(startCursor), limit, limit + 1,
+            recorder);
+        // the match after the limit only shows that there's a next page, so it isn't read
+        final var userModels = getUsersByIds(realm, matches.stream().limit(limit)
+            .map(ParallelPageScanner.Match::getUserId).collect(Collectors.toList()));
+        final var foundUserIds = userModels.stream().map(UserModel::getId)
+            .collect(Collectors.toList());
+        final var foundUsers = userModels.stream().map(toRepresentation)
+            .collect(Collectors.toList());
+        // users removed since they were matched don't end the pagination
+        page = matches.size() <= limit ? new UserSearchPlan.Page(foundUsers, foundUserIds, null)
+            : searchPlan.toPage(foundUsers, foundUserIds, matches.get(limit).getCursor());
+      } else {
+        page = searchPlan.findPage(startCursor, limit, config.getMaxScanBatchSize(), recorder,
+            toRepresentation);
+      }
+
+      final var pagination = page.getPagination();
+      if (cacheKey != null) {
+        searchResultCache.put(cacheKey, page.getUserIds(), pagination);
+      }
+      return SearchUsersByAttributesResponseDto.builder().users(page.getUsers())
+          .pagination(pagination).build();
+    } finally {
+      recorder.stop();
+    }
+  }
+
+  /**
+   * Reads users by ids with batched queries if users of the realm are stored in the database,
+   * otherwise one by one.
+   *
+   * @return found users in the order of the ids
+   */
+  private List<UserModel> getUsersByIds(RealmModel realm, List<String> userIds) {
+    if (JpaUserSearch.isSupported(session, realm)) {
+      return new JpaUserSearch(session, realm, Map.of(), 0)
+          .getUsersByIds(userIds, UserAttributeBatchLoader.DEFAULT_BATCH_SIZE);
+    }
+    return userIds.stream()
+        .map(userId -> session.users().getUserById(realm, userId))
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Same search as
+   * {@link UserApiProvider#searchUsersByAttributes(HttpRequest, SearchUsersByAttributesRequestDto)}
+   * but all the found users starting from the continue token or cursor are written as newline
+   * delimited JSON while they are found, {@code limit} is ignored. Memory usage doesn't depend on
+   * the count of found users, so it's suitable for exporting large sets of users.
+   *
+   * @param request    The http request itself
+   * @param requestDto {@link SearchUsersByAttributesRequestDto} representation of request body
+   * @return found users, one {@link UserRepresentation} per line
+   */
+  @POST
+  @Path("v2/search-by-attributes/stream")
+  @NoCache
+  @Produces({NdjsonStreamingOutput.APPLICATION_NDJSON})
+  @Encoded
+  public StreamingOutput streamUsersByAttributes(@Context final HttpRequest request,
+      SearchUsersByAttributesRequestDto requestDto) {
+    final var realm = session.getContext().getRealm();
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, realm.getName());
+
+    final var startCursor = getStartCursor(requestDto.getPagination());
+    if (startCursor == null) {
+      return new NdjsonStreamingOutput(Stream.empty());
+    }
+    final var mapper = new UserRepresentationMapper(session, realm, requestDto.getProjection());
+    final var searchPlan = UserSearchPlan.of(session, realm, requestDto, mapper, dependencies);
+    final var recorder = metrics.start(Endpoint.V2_SEARCH_BY_ATTRIBUTES_STREAM);
+    recorder.iteration();
+    return new NdjsonStreamingOutput(searchPlan.getSource().getUsersStream(startCursor, -1)
+        .peek(userModel -> recorder.scanned())
+        .filter(searchPlan.getFilter())
+        .peek(userModel -> recorder.matched())
+        .map(recorder.timeMapping(mapper::toRepresentation))
+        .onClose(recorder::stop));
+  }
+
+  /**
+   * Evaluates several
+   * {@link UserApiProvider#searchUsersByAttributes(HttpRequest, SearchUsersByAttributesRequestDto)}
+   * requests, so a batch of requests pays for authentication once. Every request selects users
+   * the same way as a single search. Requests that filter all the users of the realm in memory
+   * are evaluated in a single pass over the users, every user is checked against the filters of
+   * all of them that haven't found their page yet.
+   * <p>
+   * Continue tokens and cursors of the results are the same as of a single search, use them to
+   * continue the requests in the next batch search.
+   *
+   * @param request    The http request itself
+   * @param requestDto {@link BatchSearchUsersByAttributesRequestDto} representation of request
+   *                   body
+   * @return {@link BatchSearchUsersByAttributesResponseDto} results of the requests by their names
+   */
+  @POST
+  @Path("v2/search-by-attributes/batch")
+  @NoCache
+  @Produces({MediaType.APPLICATION_JSON})
+  @Encoded
+  public BatchSearchUsersByAttributesResponseDto batchSearchUsersByAttributes(
+      @Context final HttpRequest request, BatchSearchUsersByAttributesRequestDto requestDto) {
+    final var realm = session.getContext().getRealm();
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, realm.getName());
+
+    final var recorder = metrics.start(Endpoint.V2_SEARCH_BY_ATTRIBUTES_BATCH);
+    try {
+      return BatchSearchUsersByAttributesResponseDto.builder()
+          .results(new BatchUserSearch(session, realm, dependencies)
+              .search(requestDto.getQueries(), recorder))
+          .build();
+    } finally {
+      recorder.stop();
+    }
+  }
+
+  /**
+   * Returns users that were created, changed or removed since the watermark of the previous request
+   * and match the filters of
+   * {@link UserApiProvider#searchUsersByAttributes(HttpRequest, SearchUsersByAttributesRequestDto)}
+   * request, so replicas of the found users can be kept current without searching all the users
+   * again. Work depends on the count of the changes, not on the count of users of the realm.
+   * <p>
+   * Ids of the changed users that were removed or don't match the filters are returned as
+   * unmatched, they may have never matched the filters before the change. If the changes
+   * since the watermark aren't known, e.g. the watermark isn't set, is too old or the node was
+   * restarted, the response asks to search all the users again.
+   *
+   * @param request    The http request itself
+   * @param requestDto {@link SearchUserChangesRequestDto} representation of request body
+   * @return {@link SearchUserChangesResponseDto} changed users and the next watermark
+   */
+  @POST
+  @Path("v2/search-by-attributes/changes")
+  @NoCache
+  @Produces({MediaType.APPLICATION_JSON})
+  @Encoded
+  public SearchUserChangesResponseDto searchUserChanges(@Context final HttpRequest request,
+      SearchUserChangesRequestDto requestDto) {
+    final var realm = session.getContext().getRealm();
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, realm.getName());
+
+    // watermark is taken before the changes, so changes received meanwhile are returned again
+    final var watermark = userChangeLog.getWatermark();
+    final var changedUserIds = requestDto.getSince() == null ? null
+        : userChangeLog.getChangedUserIds(realm, requestDto.getSince());
+    if (changedUserIds == null) {
+      return SearchUserChangesResponseDto.builder().users(List.of()).unmatchedUserIds(List.of())
+          .watermark(watermark).resyncRequired(true).build();
+    }
+
+    final var recorder = metrics.start(Endpoint.V2_SEARCH_USER_CHANGES);
+    recorder.iteration();
+    try {
+      final var query = CompiledUserQuery.compile(requestDto.getQuery(),
+          config.getPrefixExpander(), null);
+      final var mapper = new UserRepresentationMapper(session, realm,
+          requestDto.getQuery().getProjection());
+      final var toRepresentation = recorder.timeMapping(mapper::toRepresentation);
+      final var users = new ArrayList<UserRepresentation>();
+      final var unmatchedUserIds = new ArrayList<String>();
+      for (final var userId : changedUserIds) {
+        recorder.scanned();
+        final var userModel = session.users().getUserById(realm, userId);
+        // service accounts aren't searched, so they're never returned
+        if (userModel != null && userModel.getServiceAccountClientLink() == null
+            && query.test(userModel)) {
+          recorder.matched();
+          users.add(toRepresentation.apply(userModel));
+        } else {
+          unmatchedUserIds.add(userId);
+        }
+      }
+      return SearchUserChangesResponseDto.builder().users(users).unmatchedUserIds(unmatchedUserIds)
+          .watermark(watermark).resyncRequired(false).build();
+    } finally {
+      recorder.stop();
     }
+  }
+
+  /**
+   * Counts users that match the same filters as
+   * {@link UserApiProvider#searchUsersByAttributes(HttpRequest, SearchUsersByAttributesRequestDto)},
+   * pagination and projection of the request are ignored. If users of the realm are stored in the
+   * database then they are counted by a single {@code count} query, otherwise candidate users are
+   * filtered in memory without building their representations.
+   *
+   * @param request    The http request itself
+   * @param requestDto {@link SearchUsersByAttributesRequestDto} representation of request body
+   * @return count of the found users
+   */
+  @POST
+  @Path("v2/count-by-attributes")
+  @NoCache
+  @Produces({MediaType.APPLICATION_JSON})
+  @Encoded
+  public CountUsersByAttributesResponseDto countUsersByAttributes(
+      @Context final HttpRequest request, SearchUsersByAttributesRequestDto requestDto) {
+    final var realm = session.getContext().getRealm();
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, realm.getName());
 
-    final var foundUsers = new ArrayList<UserRepresentation>();
-
-    final var oldContinueToken = new AtomicInteger(continueToken.get());
-    do {
-      oldContinueToken.set(continueToken.get());
-      session.users().getUsersStream(realm, continueToken.get(), limit.get())
-          // skip all remaining users if list is filled
-          .filter(userModel -> limit.get() < 0 || foundUsers.size() < (limit.get() + 1))
-          // set count of all processed users as continue token
-          .peek(userModel -> continueToken.incrementAndGet())
-          // filter users by attributesEquals
-          .filter(userModel -> UserFilter.isUserMatchesAttributesEquals(userModel,
-              requestDto.getAttributesEquals()))
-          // filter users by attributesStartWith
-          .filter(userModel -> UserFilter.isUserMatchesAttributesStartsWith(userModel,
-              requestDto.getAttributesStartsWith()))
-          // filter users by attributesThatAreStartFor
-          .filter(userModel -> UserFilter.isUserMatchesAttributesThatAreStartFor(userModel,
-              requestDto.getAttributesThatAreStartFor()))
-          // map to UserRepresentation
-          .map(userModel -> ModelToRepresentation.toRepresentation(session, realm, userModel))
-          // add to list of found users
-          .forEach(foundUsers::add);
-    } while (limit.get() > 0 // if limit<=0 then we need only 1 iteration
-        // if continueToken hasn't changed then user stream was empty, so end loop
-        && oldContinueToken.get() != continueToken.get()
-        // if found enough users end the loop
-        && foundUsers.size() < (limit.get() + 1));
-
-    if (limit.get() < 0 || foundUsers.size() <= limit.get()) {
-      // if there were found users only for this page then it's last page
-      continueToken.set(-1);
-    } else {
-      // remove last found user as they're from next page
-      foundUsers.remove(limit.get());
-      continueToken.decrementAndGet();
+    final var recorder = metrics.start(Endpoint.V2_COUNT_BY_ATTRIBUTES);
+    recorder.iteration();
+    try {
+      // values of attributes with match modes are compared in memory, so such users are counted
+      // by the search
+      if (requestDto.getMatchModes().isEmpty() && JpaUserSearch.isSupported(session, realm)) {
+        final var count = new JpaUserSearch(session, realm, Map.of(), 0)
+            .countUsers(requestDto.getAttributesEquals(), requestDto.getAttributesStartsWith(),
+                config.getPrefixExpander().expand(requestDto.getAttributesThatAreStartFor()));
+        return CountUsersByAttributesResponseDto.builder().count(count).build();
+      }
+      // users aren't mapped, empty projection only limits prefetched attributes to the filters
+      final var mapper = new UserRepresentationMapper(session, realm, new Projection());
+      final var searchPlan = UserSearchPlan.of(session, realm, requestDto, mapper, dependencies);
+      try (final var users = searchPlan.getSource().getUsersStream(ContinueCursor.start(), -1)) {
+        final var count = users
+            .peek(userModel -> recorder.scanned())
+            .filter(searchPlan.getFilter())
+            .peek(userModel -> recorder.matched())
+            .count();
+        return CountUsersByAttributesResponseDto.builder().count(count).build();
+      }
+    } finally {
+      recorder.stop();
     }
+  }
+
+  /**
+   * Statistics of the attributes of the realm users: for every attribute the count and the share
+   * of the users that have it, the count of distinct values and the most common values. The
+   * statistics are computed in background and recomputed periodically, so they may be stale. They
+   * help to decide which attributes deserve database indexes, v2 search uses them to check the
+   * most selective filters first.
+   *
+   * @param request The http request itself
+   * @return {@link AttributeStatsResponseDto} statistics of the realm attributes
+   * @throws NotFoundException           if the statistics are disabled
+   * @throws ServiceUnavailableException if the statistics of the realm aren't computed yet
+   */
+  @GET
+  @Path("v2/attribute-stats")
+  @NoCache
+  @Produces({MediaType.APPLICATION_JSON})
+  public AttributeStatsResponseDto getAttributeStats(@Context final HttpRequest request) {
+    final var realm = session.getContext().getRealm();
+    authenticateRealmAdminRequest(request.getHttpHeaders());
+    validateRequestRealm(request, realm.getName());
 
-    return SearchUsersByAttributesResponseDto.builder().users(foundUsers)
-        .pagination(Pagination.builder().continueToken(continueToken.get()).build())
+    if (!attributeStatistics.isEnabled()) {
+      throw new NotFoundException("Attribute statistics are disabled");
+    }
+    final var stats = attributeStatistics.get(realm);
+    if (stats == null) {
+      // computation of the statistics is started by the first request
+      throw new ServiceUnavailableException(ATTRIBUTE_STATS_RETRY_AFTER_SECONDS);
+    }
+    final var attributes = new TreeMap<String, AttributeStatsDto>();
+    stats.getAttributes().forEach((name, attributeStats) -> attributes.put(name,
+        AttributeStatsDto.builder()
+            .userCount(attributeStats.getUserCount())
+            .coverage(stats.getUserCount() == 0 ? 0
+                : (double) attributeStats.getUserCount() / stats.getUserCount())
+            .distinctValues(attributeStats.getDistinctValues())
+            .topValues(attributeStats.getTopValues())
+            .build()));
+    return AttributeStatsResponseDto.builder()
+        .userCount(stats.getUserCount())
+        .computedAt(stats.getComputedAt())
+        .attributes(attributes)
         .build();
   }
 
+  /**
+   * @return cursor to start the search from or {@code null} if all pages were already selected
+   */
+  static ContinueCursor getStartCursor(SearchUsersByAttributesRequestDto.Pagination pagination) {
+    if (pagination.getCursor() != null) {
+      return ContinueCursor.decode(pagination.getCursor());
+    }
+    final var continueToken = Objects.requireNonNullElse(pagination.getContinueToken(), 0);
+    return continueToken < 0 ? null : ContinueCursor.ofOffset(continueToken);
+  }
+
   protected void validateRequestRealm(HttpRequest request, String realmName) {
     var realmNamePathOrder = 1;
     var pathSegment = request.getUri().getPathSegments().get(realmNamePathOrder);
@@ -257,7 +707,11 @@ public class UserApiProvider extends AdminRoot implements RealmResourceProvider
   }
 
   protected List<UserRepresentation> toRepresentation(Stream<UserModel> userModelStream) {
+    return toRepresentationStream(userModelStream).collect(Collectors.toList());
+  }
+
+  protected Stream<UserRepresentation> toRepresentationStream(Stream<UserModel> userModelStream) {
     return userModelStream.map(userModel -> ModelToRepresentation.toRepresentation(session,
-        session.getContext().getRealm(), userModel)).collect(Collectors.toList());
+        session.getContext().getRealm(), userModel));
   }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.Builder;
+import lombok.Getter;
+import org.keycloak.Config.Scope;
+
+/**
+ * Configuration of the users REST API extension. Read from the SPI configuration of the
+ * {@code realm-restapi-extension} provider {@code users}, for example
+ * {@code --spi-realm-restapi-extension-users-hierarchy-separator=.}
+ */
+@Builder(toBuilder = true)
+@Getter
+public class UserApiProviderConfig {
+
+  private static final long DEFAULT_INDEX_REFRESH_INTERVAL_SECONDS = 900;
+  private static final long DEFAULT_SEARCH_CACHE_TTL_SECONDS = 30;
+  private static final int DEFAULT_SEARCH_CACHE_MAX_PAGE_SIZE = 1000;
+  private static final int DEFAULT_ASYNC_SEARCH_QUEUE_SIZE = 100;
+  private static final long DEFAULT_ASYNC_SEARCH_TIMEOUT_SECONDS = 60;
+  private static final int DEFAULT_SCAN_FETCH_SIZE = 1000;
+  private static final int DEFAULT_ATTRIBUTE_STATS_TOP_VALUES = 10;
+
+  /**
+   * Separator of the hierarchy segments in the attribute values. If set then
+   * {@code attributesThatAreStartFor} matches only values that end on a segment boundary.
+   */
+  private final String hierarchySeparator;
+
+  /**
+   * Names of the attributes kept in the in-memory inverted index. If empty then the index is
+   * disabled.
+   */
+  @Builder.Default
+  private final List<String> indexedAttributes = List.of();
+
+  /**
+   * Names of the attributes kept in the inverted index with sorted values, e.g. hierarchy codes.
+   * {@code attributesStartsWith} of these attributes are looked up in the index by range of
+   * values.
+   */
+  @Builder.Default
+  private final List<String> sortedIndexedAttributes = List.of();
+
+  /**
+   * Interval of the inverted index rebuild in seconds, 0 disables the rebuild.
+   */
+  @Builder.Default
+  private final long indexRefreshIntervalSeconds = DEFAULT_INDEX_REFRESH_INTERVAL_SECONDS;
+
+  /**
+   * Max count of pages kept in the v2 search result cache. If 0 then the cache is disabled.
+   */
+  private final int searchCacheMaxEntries;
+
+  /**
+   * Time in seconds after which a page cached by v2 search expires.
+   */
+  @Builder.Default
+  private final long searchCacheTtlSeconds = DEFAULT_SEARCH_CACHE_TTL_SECONDS;
+
+  /**
+   * Max count of users of a page cached by v2 search, larger pages aren't cached.
+   */
+  @Builder.Default
+  private final int searchCacheMaxPageSize = DEFAULT_SEARCH_CACHE_MAX_PAGE_SIZE;
+
+  /**
+   * Count of pages of candidate users that v2 search reads and filters concurrently when the
+   * filters are checked in memory. If 0 then pages are read one by one in the request thread.
+   */
+  private final int parallelScanPages;
+
+  /**
+   * Max count of candidate users that v2 search requests from the user source at once. The count
+   * starts with the page size and grows while most of the candidates are filtered out.
+   */
+  @Builder.Default
+  private final int maxScanBatchSize = ScanBatchSize.DEFAULT_MAX;
+
+  /**
+   * Max count of user changes kept per realm for the changes endpoint. If 0 then the change log
+   * is disabled and the endpoint always asks to search all the users again.
+   */
+  private final int changeLogSize;
+
+  /**
+   * Count of rows the JDBC driver fetches at once while v2 search reads users found by the
+   * database. If 0 then the driver default is used.
+   */
+  @Builder.Default
+  private final int scanFetchSize = DEFAULT_SCAN_FETCH_SIZE;
+
+  /**
+   * Count of async searches run concurrently, each in its own thread. If 0 then async searches are
+   * run in the request thread.
+   */
+  private final int asyncSearchThreads;
+
+  /**
+   * Max count of async searches waiting for a free thread, the rest are rejected.
+   */
+  @Builder.Default
+  private final int asyncSearchQueueSize = DEFAULT_ASYNC_SEARCH_QUEUE_SIZE;
+
+  /**
+   * Time in seconds an async search may wait and run before it's answered with
+   * {@code 503 Service Unavailable}. If 0 then async searches aren't timed out.
+   */
+  @Builder.Default
+  private final long asyncSearchTimeoutSeconds = DEFAULT_ASYNC_SEARCH_TIMEOUT_SECONDS;
+
+  /**
+   * Interval of the attribute statistics recomputation in seconds. If 0 then the statistics are
+   * disabled.
+   */
+  private final long attributeStatsRefreshIntervalSeconds;
+
+  /**
+   * Count of the most common values kept in the statistics per attribute.
+   */
+  @Builder.Default
+  private final int attributeStatsTopValues = DEFAULT_ATTRIBUTE_STATS_TOP_VALUES;
+
+  public static UserApiProviderConfig defaults() {
+    return UserApiProviderConfig.builder().build();
+  }
+
+  public static UserApiProviderConfig fromScope(Scope config) {
+    return UserApiProviderConfig.builder()
+        .hierarchySeparator(config.get("hierarchySeparator"))
+        .indexedAttributes(getNames(config, "indexedAttributes"))
+        .sortedIndexedAttributes(getNames(config, "sortedIndexedAttributes"))
+        .indexRefreshIntervalSeconds(config.getLong("indexRefreshInterval",
+            DEFAULT_INDEX_REFRESH_INTERVAL_SECONDS))
+        .searchCacheMaxEntries(config.getInt("searchCacheMaxEntries", 0))
+        .searchCacheTtlSeconds(config.getLong("searchCacheTtl", DEFAULT_SEARCH_CACHE_TTL_SECONDS))
+        .searchCacheMaxPageSize(config.getInt("searchCacheMaxPageSize",
+            DEFAULT_SEARCH_CACHE_MAX_PAGE_SIZE))
+        .parallelScanPages(config.getInt("parallelScanPages", 0))
+        .maxScanBatchSize(config.getInt("maxScanBatchSize", ScanBatchSize.DEFAULT_MAX))
+        .changeLogSize(config.getInt("changeLogSize", 0))
+        .scanFetchSize(config.getInt("scanFetchSize", DEFAULT_SCAN_FETCH_SIZE))
+        .attributeStatsRefreshIntervalSeconds(config.getLong("attributeStatsRefreshInterval", 0L))
+        .attributeStatsTopValues(config.getInt("attributeStatsTopValues",
+            DEFAULT_ATTRIBUTE_STATS_TOP_VALUES))
+        .asyncSearchThreads(config.getInt("asyncSearchThreads", 0))
+        .asyncSearchQueueSize(config.getInt("asyncSearchQueueSize",
+            DEFAULT_ASYNC_SEARCH_QUEUE_SIZE))
+        .asyncSearchTimeoutSeconds(config.getLong("asyncSearchTimeout",
+            DEFAULT_ASYNC_SEARCH_TIMEOUT_SECONDS))
+        .build();
+  }
+
+  public PrefixExpander getPrefixExpander() {
+    return new PrefixExpander(hierarchySeparator);
+  }
+
+  private static List<String> getNames(Scope config, String key) {
+    var names = config.getArray(key);
+    return names == null ? List.of()
+        : Arrays.stream(names).map(String::trim).filter(name -> !name.isEmpty())
+            .collect(Collectors.toList());
+  }
+}
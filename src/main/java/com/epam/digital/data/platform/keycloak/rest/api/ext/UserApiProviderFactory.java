@@ -16,6 +16,12 @@
 
 package com.epam.digital.data.platform.keycloak.rest.api.ext;
 
+import com.epam.digital.data.platform.keycloak.rest.api.ext.cache.SearchResultCache;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.changelog.UserChangeLog;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.AttributeStatistics;
+import java.util.concurrent.TimeUnit;
 import org.keycloak.Config.Scope;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
@@ -26,17 +32,63 @@ public class UserApiProviderFactory implements RealmResourceProviderFactory {
 
   public static final String ID = "users";
 
+  private UserApiDependencies dependencies = UserApiDependencies.defaults();
+
   public RealmResourceProvider create(KeycloakSession session) {
-    return new UserApiProvider(session, new UserFilter());
+    return new UserApiProvider(session, dependencies);
   }
 
-  public void init(Scope config) {
+  public void init(Scope scope) {
+    var config = UserApiProviderConfig.fromScope(scope);
+    this.dependencies = UserApiDependencies.builder()
+        .config(config)
+        .attributeIndex(new AttributeIndex(config.getIndexedAttributes(),
+            config.getSortedIndexedAttributes(),
+            TimeUnit.SECONDS.toMillis(config.getIndexRefreshIntervalSeconds())))
+        .searchResultCache(new SearchResultCache(config.getSearchCacheMaxEntries(),
+            TimeUnit.SECONDS.toMillis(config.getSearchCacheTtlSeconds()),
+            config.getSearchCacheMaxPageSize()))
+        .pageScanner(new ParallelPageScanner(config.getParallelScanPages()))
+        .userChangeLog(new UserChangeLog(config.getChangeLogSize()))
+        .asyncSearchExecutor(new AsyncSearchExecutor(config.getAsyncSearchThreads(),
+            config.getAsyncSearchQueueSize(), config.getAsyncSearchTimeoutSeconds()))
+        .attributeStatistics(new AttributeStatistics(
+            TimeUnit.SECONDS.toMillis(config.getAttributeStatsRefreshIntervalSeconds()),
+            config.getAttributeStatsTopValues()))
+        .build();
   }
 
   public void postInit(KeycloakSessionFactory factory) {
+    this.dependencies = dependencies.toBuilder().metrics(UserApiMetrics.create()).build();
+    dependencies.getAttributeIndex().start(factory);
+    dependencies.getSearchResultCache().start(factory);
+    dependencies.getPageScanner().start(factory);
+    dependencies.getUserChangeLog().start(factory);
+    dependencies.getAsyncSearchExecutor().start(factory);
+    dependencies.getAttributeStatistics().start(factory);
   }
 
   public void close() {
+    dependencies.getAttributeIndex().close();
+    dependencies.getPageScanner().close();
+    dependencies.getAsyncSearchExecutor().close();
+    dependencies.getAttributeStatistics().close();
+  }
+
+  public AttributeIndex getAttributeIndex() {
+    return dependencies.getAttributeIndex();
+  }
+
+  public SearchResultCache getSearchResultCache() {
+    return dependencies.getSearchResultCache();
+  }
+
+  public UserChangeLog getUserChangeLog() {
+    return dependencies.getUserChangeLog();
+  }
+
+  public AttributeStatistics getAttributeStatistics() {
+    return dependencies.getAttributeStatistics();
   }
 
   public String getId() {
@@ -16,11 +16,21 @@
 
 package com.epam.digital.data.platform.keycloak.rest.api.ext;
 
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.RealmAttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.JpaUserSearch;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.UserAttributeBatchLoader;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.AttributeStatistics;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.RealmAttributeStats;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.UserModel;
 
@@ -52,6 +62,22 @@ public class UserFilter {
                         .anyMatch(attr -> attr.startsWith(value))));
   }
 
+  /**
+   * @return {@code true} if any value of the user attribute starts with any of the prefixes
+   */
+  public static boolean isUserMatchesAnyPrefix(UserModel userModel, String attribute,
+      PrefixTrie prefixes) {
+    return userModel.getAttributeStream(attribute).anyMatch(prefixes::hasPrefixOf);
+  }
+
+  /**
+   * @return {@code true} if any value of the user attribute is a start for any of the values
+   */
+  public static boolean isUserMatchesAnyStartFor(UserModel userModel, String attribute,
+      PrefixTrie values) {
+    return userModel.getAttributeStream(attribute).anyMatch(values::isPrefixOfAny);
+  }
+
   private static boolean isListEmpty(List<String> list) {
     return Objects.isNull(list) || list.isEmpty();
   }
@@ -59,18 +85,41 @@ public class UserFilter {
   @Deprecated(forRemoval = true)
   public Stream<UserModel> filterUsersByAttributesEquals(KeycloakSession session,
       Map<String, String> attributes) {
+    return filterUsersByAttributesEquals(session, attributes, AttributeIndex.disabled(),
+        AttributeStatistics.disabled());
+  }
+
+  /**
+   * Finds users whose first value of every attribute equals the requested value. If users of the
+   * realm are stored in the database they are found by a single query over all the attributes,
+   * otherwise users are searched by the attribute with the least count of users and filtered by
+   * the rest of the attributes.
+   *
+   * @param attributeIndex      index used to count users that have the values
+   * @param attributeStatistics statistics used to estimate count of users that have the values of
+   *                            the attributes that aren't indexed
+   */
+  @Deprecated(forRemoval = true)
+  public Stream<UserModel> filterUsersByAttributesEquals(KeycloakSession session,
+      Map<String, String> attributes, AttributeIndex attributeIndex,
+      AttributeStatistics attributeStatistics) {
     Stream<UserModel> userModels = Stream.empty();
     if (attributes == null || attributes.entrySet().isEmpty()) {
       return userModels;
     }
-    int i = 0;
+    var realm = session.getContext().getRealm();
+    if (JpaUserSearch.isSupported(session, realm)) {
+      userModels = new UserAttributeBatchLoader(session, attributes.keySet(),
+          UserAttributeBatchLoader.DEFAULT_BATCH_SIZE)
+          .prefetch(new JpaUserSearch(session, realm, Map.of(), 0)
+              .getUsersStreamByAttributeValues(attributes));
+    } else {
+      var seed = getMostSelectiveAttribute(attributes, attributeIndex.get(realm),
+          attributeStatistics.get(realm));
+      userModels = session.users()
+          .searchForUserByUserAttributeStream(realm, seed.getKey(), seed.getValue());
+    }
     for (Entry<String, String> attribute : attributes.entrySet()) {
-      if (i == 0) {
-        userModels = session.users()
-            .searchForUserByUserAttributeStream(session.getContext().getRealm(), attribute.getKey(),
-                attribute.getValue());
-        i++;
-      }
       userModels = userModels.filter(
           userModel -> Objects.equals(userModel.getFirstAttribute(attribute.getKey()),
               attribute.getValue()));
@@ -78,6 +127,26 @@ public class UserFilter {
     return userModels;
   }
 
+  /**
+   * @return the attribute with the least count of users in the index or, if it isn't indexed, the
+   * least estimated count of users in the statistics, the same estimate orders the filters of
+   * {@link CompiledUserQuery}; the first attribute by name if the count of none of the attributes
+   * is known
+   */
+  private static Entry<String, String> getMostSelectiveAttribute(Map<String, String> attributes,
+      @Nullable RealmAttributeIndex realmIndex, @Nullable RealmAttributeStats stats) {
+    var byName = new TreeMap<>(attributes);
+    return byName.entrySet().stream()
+        .min(Comparator.comparingLong(attribute -> {
+          if (realmIndex != null && realmIndex.covers(Set.of(attribute.getKey()))) {
+            return realmIndex.countUsers(attribute.getKey(), attribute.getValue());
+          }
+          return stats == null ? Long.MAX_VALUE
+              : stats.estimateUsers(attribute.getKey(), List.of(attribute.getValue()));
+        }))
+        .orElseThrow();
+  }
+
   @Deprecated(forRemoval = true)
   public Stream<UserModel> filterUsersByAttributesInvertedStartsWith(Stream<UserModel> userModels,
       Map<String, List<String>> attributes) {
@@ -85,15 +154,11 @@ public class UserFilter {
       return Stream.empty();
     }
     for (Entry<String, List<String>> attribute : attributes.entrySet()) {
-      userModels = userModels.filter(userModel -> matchesAnyPrefix(attribute, userModel));
+      var requestedAttributes = new PrefixTrie(attribute.getValue());
+      userModels = userModels.filter(
+          userModel -> isUserMatchesAnyStartFor(userModel, attribute.getKey(),
+              requestedAttributes));
     }
     return userModels;
   }
-
-  private boolean matchesAnyPrefix(Entry<String, List<String>> requestedAttributes,
-      UserModel userModel) {
-    return userModel.getAttributeStream(requestedAttributes.getKey()).anyMatch(
-        usersAttribute -> requestedAttributes.getValue().stream()
-            .anyMatch(requestedAttribute -> requestedAttribute.startsWith(usersAttribute)));
-  }
 }
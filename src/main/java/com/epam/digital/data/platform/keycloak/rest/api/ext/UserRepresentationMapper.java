@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.Projection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import javax.ws.rs.BadRequestException;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.ModelToRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+/**
+ * Maps found users to {@link UserRepresentation}. Without projection the full representation is
+ * built by {@link ModelToRepresentation}, that also loads required actions, credentials and
+ * federation details of the user. With projection only the requested fields and attributes are
+ * read from the user model.
+ */
+public class UserRepresentationMapper {
+
+  private static final Map<String, BiConsumer<UserModel, UserRepresentation>> FIELDS = Map.of(
+      "id", (user, rep) -> rep.setId(user.getId()),
+      "username", (user, rep) -> rep.setUsername(user.getUsername()),
+      "firstName", (user, rep) -> rep.setFirstName(user.getFirstName()),
+      "lastName", (user, rep) -> rep.setLastName(user.getLastName()),
+      "email", (user, rep) -> rep.setEmail(user.getEmail()),
+      "emailVerified", (user, rep) -> rep.setEmailVerified(user.isEmailVerified()),
+      "enabled", (user, rep) -> rep.setEnabled(user.isEnabled()),
+      "createdTimestamp", (user, rep) -> rep.setCreatedTimestamp(user.getCreatedTimestamp()),
+      "federationLink", (user, rep) -> rep.setFederationLink(user.getFederationLink()));
+
+  private final KeycloakSession session;
+  private final RealmModel realm;
+  private final List<BiConsumer<UserModel, UserRepresentation>> fieldMappers;
+  private final List<String> attributes;
+  private final boolean fullRepresentation;
+
+  /**
+   * @param projection requested projection, if {@code null} the full representation is built
+   * @throws BadRequestException if projection contains unknown field
+   */
+  public UserRepresentationMapper(KeycloakSession session, RealmModel realm,
+      @Nullable Projection projection) {
+    this.session = session;
+    this.realm = realm;
+    this.fullRepresentation = Objects.isNull(projection);
+    this.fieldMappers = new ArrayList<>();
+    this.attributes = fullRepresentation ? List.of()
+        : List.copyOf(Objects.requireNonNullElse(projection.getAttributes(), List.of()));
+    if (!fullRepresentation) {
+      Objects.requireNonNullElse(projection.getFields(), List.<String>of())
+          .forEach(field -> fieldMappers.add(getFieldMapper(field)));
+    }
+  }
+
+  /**
+   * @return names of the attributes that are read from the user model or {@code null} if all the
+   * attributes are read
+   */
+  @Nullable
+  public Set<String> getAttributeNames() {
+    return fullRepresentation ? null : Set.copyOf(attributes);
+  }
+
+  public UserRepresentation toRepresentation(UserModel userModel) {
+    if (fullRepresentation) {
+      return ModelToRepresentation.toRepresentation(session, realm, userModel);
+    }
+    var representation = new UserRepresentation();
+    fieldMappers.forEach(mapper -> mapper.accept(userModel, representation));
+    if (!attributes.isEmpty()) {
+      var attributeValues = new HashMap<String, List<String>>();
+      attributes.forEach(name -> {
+        var values = userModel.getAttributeStream(name).collect(Collectors.toList());
+        if (!values.isEmpty()) {
+          attributeValues.put(name, values);
+        }
+      });
+      representation.setAttributes(attributeValues);
+    }
+    return representation;
+  }
+
+  private static BiConsumer<UserModel, UserRepresentation> getFieldMapper(String field) {
+    var mapper = FIELDS.get(field);
+    if (mapper == null) {
+      throw new BadRequestException(
+          String.format("Unknown projection field %s, supported fields are %s", field,
+              FIELDS.keySet()));
+    }
+    return mapper;
+  }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto.Pagination;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.JpaUserSearch;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.UserAttributeBatchLoader;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.UserEntityDetacher;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.SearchRecorder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.annotation.Nullable;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.representations.idm.UserRepresentation;
+
+/**
+ * Decides how users for {@link SearchUsersByAttributesRequestDto} are selected: which source
+ * provides candidate users and which filters are left to be checked in memory.
+ * <p>
+ * If any of the {@code attributesEquals} is kept in the {@link AttributeIndex}, or any of the
+ * {@code attributesStartsWith} is kept there with sorted values, then candidates are taken from the
+ * index by these attributes in username order, pages are selected by username seek, and the
+ * candidates are checked against all the filters in memory.
+ * <p>
+ * Otherwise, if users of the realm are stored in the database then all the attributes are filtered
+ * by the database and pages are selected by username seek. Attributes with match modes are only
+ * checked for presence by the database and their values are compared in memory. Otherwise, users
+ * are scanned by offset through the user providers and all the attributes are filtered in memory
+ * by {@link CompiledUserQuery}.
+ * <p>
+ * Attributes that are read by the filters and by the representation mapper are loaded for batches
+ * of candidate users with a single query when the users are stored in the database. Entities of
+ * the processed candidates are detached from the persistence context, so memory used by a scan
+ * doesn't grow with the count of scanned users.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class UserSearchPlan {
+
+  private static final int DETACH_BATCH_SIZE = UserAttributeBatchLoader.DEFAULT_BATCH_SIZE;
+
+  private final UserPageSource source;
+  private final Predicate<UserModel> filter;
+  /**
+   * Opens the same source in another session, so pages can be read and filtered concurrently by
+   * {@link ParallelPageScanner}. {@code null} if the source is cheap enough to be read in the
+   * request session only.
+   */
+  @Nullable
+  private final Function<KeycloakSession, UserPageSource> detachedSource;
+  @Getter(AccessLevel.NONE)
+  private final RealmUserPositions positions;
+  /**
+   * {@code true} if the source selects pages by username and doesn't know offsets of the users,
+   * {@code false} if the source scans all the users of the realm by offset
+   */
+  private final boolean seeking;
+  /**
+   * {@code true} if offsets of the next pages are counted for the legacy continue token,
+   * {@code false} if the client paginates by cursor and doesn't need them
+   */
+  @Getter(AccessLevel.NONE)
+  private final boolean resolvingOffsets;
+
+  /**
+   * @param dependencies configuration, the attribute index to take candidates from and the
+   *                     statistics used to order the filters checked in memory
+   */
+  static UserSearchPlan of(KeycloakSession session, RealmModel realm,
+      SearchUsersByAttributesRequestDto requestDto, UserRepresentationMapper mapper,
+      UserApiDependencies dependencies) {
+    var config = dependencies.getConfig();
+    var attributeIndex = dependencies.getAttributeIndex();
+    var attributeStatistics = dependencies.getAttributeStatistics();
+    var prefixExpander = config.getPrefixExpander();
+    var attributesEquals = nonEmpty(requestDto.getAttributesEquals());
+    var attributesStartsWith = nonEmpty(requestDto.getAttributesStartsWith());
+    var realmIndex = attributesEquals.isEmpty() && attributesStartsWith.isEmpty() ? null
+        : attributeIndex.get(realm);
+    var matchModes = requestDto.getMatchModes();
+    var positions = new RealmUserPositions(session, realm, realmIndex);
+    // counting the users before the next page costs as much as an offset query, so only the
+    // clients that paginate by the legacy continue token pay for it
+    var resolvingOffsets = requestDto.getPagination().getCursor() == null;
+    if (realmIndex != null) {
+      // index stores the exact values, so it's only used for attributes compared exactly
+      var indexedEquals = attributesEquals.entrySet().stream()
+          .filter(entry -> !matchModes.containsKey(entry.getKey()))
+          .filter(entry -> realmIndex.covers(Set.of(entry.getKey())))
+          .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      var indexedStartsWith = attributesStartsWith.entrySet().stream()
+          .filter(entry -> !matchModes.containsKey(entry.getKey()))
+          .filter(entry -> realmIndex.isSorted(entry.getKey()))
+          .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      if (!indexedEquals.isEmpty() || !indexedStartsWith.isEmpty()) {
+        // index may be stale and may not cover all the filters, so found users are checked
+        // against all the filters
+        UserPageSource source = (cursor, maxResults) -> positions.resolveLastUsername(cursor)
+            .map(resolved -> realmIndex.findUserIds(indexedEquals, indexedStartsWith,
+                resolved.getLastUsername(), maxResults))
+            .orElseGet(List::of)
+            .stream()
+            .map(userId -> session.users().getUserById(realm, userId))
+            .filter(Objects::nonNull);
+        return new UserSearchPlan(
+            prefetching(session, source, getFilterAttributeNames(requestDto, mapper)),
+            CompiledUserQuery.compile(requestDto, prefixExpander,
+                attributeStatistics.get(realm)), null, positions, true, resolvingOffsets);
+      }
+    }
+
+    if (JpaUserSearch.isSupported(session, realm)) {
+      var jpaUserSearch = new JpaUserSearch(session, realm, matchModes,
+          config.getScanFetchSize());
+      var expandedAttributesThatAreStartFor = prefixExpander.expand(
+          requestDto.getAttributesThatAreStartFor());
+      // legacy continue tokens count all the users of the realm, so the page starts after the
+      // user at that offset
+      UserPageSource source = (cursor, maxResults) -> positions.resolveLastUsername(cursor)
+          .map(resolved -> jpaUserSearch.getUsersStream(attributesEquals, attributesStartsWith,
+              expandedAttributesThatAreStartFor, resolved.getLastUsername(), 0, maxResults))
+          .orElseGet(Stream::empty);
+      if (matchModes.isEmpty()) {
+        return new UserSearchPlan(prefetching(session, source, mapper.getAttributeNames()),
+            userModel -> true, null, positions, true, resolvingOffsets);
+      }
+      // the database only checks presence of the attributes with match modes, so found users
+      // are checked against all the filters with the values normalized in memory
+      return new UserSearchPlan(
+          prefetching(session, source, getFilterAttributeNames(requestDto, mapper)),
+          CompiledUserQuery.compile(requestDto, prefixExpander, attributeStatistics.get(realm)),
+          null, positions, true, resolvingOffsets);
+    }
+
+    var query = CompiledUserQuery.compile(requestDto, prefixExpander,
+        attributeStatistics.get(realm));
+    var source = prefetching(session, scanSource(session, realm),
+        getFilterAttributeNames(requestDto, mapper));
+    if (query.isEmpty()) {
+      // every user matches, so the first page is always enough
+      return new UserSearchPlan(source, query, null, positions, false, resolvingOffsets);
+    }
+    var realmId = realm.getId();
+    var queryAttributeNames = getQueryAttributeNames(requestDto);
+    return new UserSearchPlan(source, query,
+        scanSession -> prefetching(scanSession,
+            scanSource(scanSession, scanSession.realms().getRealm(realmId)),
+            queryAttributeNames), positions, false, resolvingOffsets);
+  }
+
+  /**
+   * @param cursor    position right before the user
+   * @param userModel user read from the source
+   * @return position right after the user, the offset is unknown if the source selects pages by
+   * username
+   */
+  ContinueCursor advance(ContinueCursor cursor, UserModel userModel) {
+    return seeking ? ContinueCursor.afterUsername(userModel.getUsername())
+        : cursor.advance(userModel);
+  }
+
+  /**
+   * @return the same position with the known count of the preceding users of the realm, so it
+   * can be returned as a continue token
+   */
+  ContinueCursor resolveOffset(ContinueCursor cursor) {
+    return positions.resolveOffset(cursor);
+  }
+
+  /**
+   * Reads candidate users from the start cursor by batches that grow while most of the candidates
+   * are filtered out, until the page and the first user of the next page are found or users end.
+   *
+   * @param startCursor      position right before the first candidate
+   * @param limit            count of users of the page, if negative then all the found users are
+   *                         returned
+   * @param maxScanBatchSize max count of candidates requested from the source at once
+   * @param toRepresentation mapper of the users of the page
+   * @return found users of the page
+   */
+  Page findPage(ContinueCursor startCursor, int limit, int maxScanBatchSize,
+      SearchRecorder recorder, Function<UserModel, UserRepresentation> toRepresentation) {
+    var users = new ArrayList<UserRepresentation>();
+    var userIds = new ArrayList<String>();
+    // position after the last processed user and position before it
+    var cursor = startCursor;
+    var previousCursor = startCursor;
+    // count of users requested at once, the first batch also takes the user that shows whether
+    // there's a next page
+    var batchSize = new ScanBatchSize(limit < 0 ? limit : limit + 1, maxScanBatchSize);
+    ContinueCursor oldCursor;
+    do {
+      recorder.iteration();
+      oldCursor = cursor;
+      var scanned = 0;
+      var matched = 0;
+      try (var candidates = source.getUsersStream(cursor, batchSize.get())) {
+        var iterator = candidates.iterator();
+        // skip all remaining users if the page and the first user of the next page are found
+        while (iterator.hasNext() && (limit < 0 || users.size() < limit + 1)) {
+          var userModel = iterator.next();
+          recorder.scanned();
+          scanned++;
+          previousCursor = cursor;
+          cursor = advance(cursor, userModel);
+          if (filter.test(userModel)) {
+            recorder.matched();
+            matched++;
+            userIds.add(userModel.getId());
+            users.add(toRepresentation.apply(userModel));
+          }
+        }
+      }
+      batchSize.observe(scanned, matched);
+    } while (limit > 0 // if limit<=0 then we need only 1 iteration
+        // if cursor hasn't changed then user stream was empty, so end loop
+        && !oldCursor.equals(cursor)
+        // if found enough users end the loop
+        && users.size() < limit + 1);
+    return toPage(users, userIds, limit, previousCursor);
+  }
+
+  /**
+   * @param users          found users, at most one more than the limit
+   * @param userIds        ids of the found users
+   * @param limit          count of users of the page, if negative then all the found users are
+   *                       returned
+   * @param lastUserCursor position right before the last found user
+   * @return the page, the user after the limit shows that there's a next page that starts right
+   * before them
+   */
+  Page toPage(List<UserRepresentation> users, List<String> userIds, int limit,
+      ContinueCursor lastUserCursor) {
+    if (limit < 0 || users.size() <= limit) {
+      return new Page(users, userIds, null);
+    }
+    return toPage(users.subList(0, limit), userIds.subList(0, limit), lastUserCursor);
+  }
+
+  /**
+   * @param users          users of the page
+   * @param userIds        ids of the users of the page
+   * @param nextUserCursor position right before the first user of the next page
+   * @return the page followed by the next page
+   */
+  Page toPage(List<UserRepresentation> users, List<String> userIds,
+      ContinueCursor nextUserCursor) {
+    // continue token counts all the users of the realm before the next page, it's left unknown
+    // if the client paginates by cursor
+    return new Page(users, userIds,
+        resolvingOffsets ? resolveOffset(nextUserCursor) : nextUserCursor);
+  }
+
+  /**
+   * Reads all the candidate users by pages of the chunk size and filters every user once it's
+   * read, so users of the whole realm are never requested from the source at once. The stream is
+   * lazy, a user is read from the source when the previous one is consumed, so users of a page are
+   * detached from the persistence context only after they're processed by the caller.
+   *
+   * @param chunkSize count of users requested from the source at once
+   * @return all the found users in the source order
+   */
+  Stream<UserModel> streamInChunks(int chunkSize) {
+    var chunks = new ChunkIterator(chunkSize);
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(chunks::close)
+        .filter(filter);
+  }
+
+  /**
+   * Source of all the users of the realm, filters are left to the caller.
+   *
+   * @param attributeNames names of the attributes to prefetch or {@code null} to prefetch all the
+   *                       attributes
+   */
+  static UserPageSource scan(KeycloakSession session, RealmModel realm,
+      @Nullable Set<String> attributeNames) {
+    return prefetching(session, scanSource(session, realm), attributeNames);
+  }
+
+  private static UserPageSource scanSource(KeycloakSession session, RealmModel realm) {
+    var positions = new RealmUserPositions(session, realm, null);
+    return (cursor, maxResults) -> session.users()
+        .getUsersStream(realm, positions.resolveOffset(cursor).getOffset(), maxResults);
+  }
+
+  private static Map<String, List<String>> nonEmpty(Map<String, List<String>> attributes) {
+    return attributes.entrySet().stream()
+        .filter(entry -> !entry.getValue().isEmpty())
+        .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+  }
+
+  /**
+   * @return names of the attributes read by the filters and by the mapper or {@code null} if the
+   * mapper reads all the attributes
+   */
+  @Nullable
+  static Set<String> getFilterAttributeNames(SearchUsersByAttributesRequestDto requestDto,
+      UserRepresentationMapper mapper) {
+    var mapperAttributeNames = mapper.getAttributeNames();
+    if (Objects.isNull(mapperAttributeNames)) {
+      return null;
+    }
+    var attributeNames = new HashSet<>(mapperAttributeNames);
+    attributeNames.addAll(getQueryAttributeNames(requestDto));
+    return attributeNames;
+  }
+
+  /**
+   * @return names of the attributes read by the filters
+   */
+  private static Set<String> getQueryAttributeNames(
+      SearchUsersByAttributesRequestDto requestDto) {
+    var attributeNames = new HashSet<>(requestDto.getAttributesEquals().keySet());
+    attributeNames.addAll(requestDto.getAttributesStartsWith().keySet());
+    attributeNames.addAll(requestDto.getAttributesThatAreStartFor().keySet());
+    return attributeNames;
+  }
+
+  /**
+   * Prefetches attributes of the users read from the database and detaches the processed users
+   * from the persistence context, see {@link #detaching(KeycloakSession, UserPageSource)}.
+   *
+   * @param attributeNames names of the attributes to prefetch or {@code null} to prefetch all the
+   *                       attributes
+   */
+  private static UserPageSource prefetching(KeycloakSession session, UserPageSource source,
+      @Nullable Set<String> attributeNames) {
+    if (!UserAttributeBatchLoader.isSupported(session)) {
+      return source;
+    }
+    if (Objects.nonNull(attributeNames) && attributeNames.isEmpty()) {
+      return detaching(session, source);
+    }
+    var loader = new UserAttributeBatchLoader(session, attributeNames,
+        UserAttributeBatchLoader.DEFAULT_BATCH_SIZE);
+    return detaching(session,
+        (cursor, maxResults) -> loader.prefetch(source.getUsersStream(cursor, maxResults)));
+  }
+
+  /**
+   * Detaches entities of the users that were already processed, so the persistence context of a
+   * long scan holds at most a batch of users instead of every scanned user. When a user is read
+   * from the stream all the users before them are processed by the caller, so they're detached in
+   * batches while the stream is read and the rest of them when the next page is requested.
+   */
+  private static UserPageSource detaching(KeycloakSession session, UserPageSource source) {
+    var detacher = new UserEntityDetacher(session);
+    var processedUserIds = new ArrayList<String>();
+    return (cursor, maxResults) -> {
+      detacher.detach(processedUserIds);
+      processedUserIds.clear();
+      return source.getUsersStream(cursor, maxResults).peek(userModel -> {
+        if (processedUserIds.size() >= DETACH_BATCH_SIZE) {
+          detacher.detach(processedUserIds);
+          processedUserIds.clear();
+        }
+        processedUserIds.add(userModel.getId());
+      });
+    };
+  }
+
+  /**
+   * Iterates over the pages of the source, the next page is requested when the users of the
+   * previous one are consumed and the previous one was full.
+   */
+  private class ChunkIterator implements Iterator<UserModel> {
+
+    private final int chunkSize;
+    private ContinueCursor cursor = ContinueCursor.start();
+    private Stream<UserModel> chunk;
+    private Iterator<UserModel> chunkUsers = Collections.emptyIterator();
+    private int chunkCount;
+    private boolean exhausted;
+
+    private ChunkIterator(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!exhausted && !chunkUsers.hasNext()) {
+        if (chunk == null) {
+          chunk = source.getUsersStream(cursor, chunkSize);
+          chunkUsers = chunk.iterator();
+          chunkCount = 0;
+        } else {
+          // the page is consumed, a page that isn't full is the last one
+          exhausted = chunkCount < chunkSize;
+          close();
+        }
+      }
+      return !exhausted;
+    }
+
+    @Override
+    public UserModel next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      var userModel = chunkUsers.next();
+      chunkCount++;
+      cursor = advance(cursor, userModel);
+      return userModel;
+    }
+
+    private void close() {
+      if (chunk != null) {
+        chunk.close();
+        chunk = null;
+        chunkUsers = Collections.emptyIterator();
+      }
+    }
+  }
+
+  @Value
+  static class Page {
+
+    List<UserRepresentation> users;
+    List<String> userIds;
+    /**
+     * Position right before the first user of the next page or {@code null} if it's the last page
+     */
+    @Nullable
+    ContinueCursor nextCursor;
+
+    /**
+     * @return pagination of the response, continue token is {@code null} if the offset of the
+     * next page isn't known
+     */
+    Pagination getPagination() {
+      return nextCursor == null ? Pagination.builder().continueToken(-1).build()
+          : Pagination.builder()
+              .continueToken(nextCursor.hasOffset() ? nextCursor.getOffset() : null)
+              .cursor(nextCursor.encode()).build();
+    }
+  }
+
+  /**
+   * Source of candidate users. Continue cursor is a position in the stream of users that the
+   * source provides.
+   */
+  @FunctionalInterface
+  interface UserPageSource {
+
+    Stream<UserModel> getUsersStream(ContinueCursor cursor, int maxResults);
+  }
+}
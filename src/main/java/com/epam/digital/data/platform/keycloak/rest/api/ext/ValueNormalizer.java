@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.MatchMode;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import javax.annotation.Nullable;
+
+/**
+ * Normalizes attribute values for the {@link MatchMode match modes} of an attribute: strips
+ * whitespaces, converts to Unicode NFC form and to lower case. Requested values are normalized
+ * once per request and user values on every comparison. Every step returns the same string if
+ * the value is already normalized, so values that are stored normalized cost a scan of their
+ * characters and no allocation.
+ */
+public final class ValueNormalizer implements UnaryOperator<String> {
+
+  private static final ValueNormalizer IDENTITY = new ValueNormalizer(false, false, false);
+
+  private final boolean trimmed;
+  private final boolean normalized;
+  private final boolean caseInsensitive;
+
+  private ValueNormalizer(boolean trimmed, boolean normalized, boolean caseInsensitive) {
+    this.trimmed = trimmed;
+    this.normalized = normalized;
+    this.caseInsensitive = caseInsensitive;
+  }
+
+  /**
+   * @param matchModes match modes of the attribute, {@code null} or empty for exact match
+   */
+  public static ValueNormalizer of(@Nullable Set<MatchMode> matchModes) {
+    if (matchModes == null || matchModes.isEmpty()) {
+      return IDENTITY;
+    }
+    return new ValueNormalizer(matchModes.contains(MatchMode.TRIMMED),
+        matchModes.contains(MatchMode.NORMALIZED), matchModes.contains(MatchMode.CASE_INSENSITIVE));
+  }
+
+  public boolean isIdentity() {
+    return this == IDENTITY;
+  }
+
+  @Override
+  public String apply(String value) {
+    var result = value;
+    if (trimmed) {
+      result = result.strip();
+    }
+    if (normalized && !Normalizer.isNormalized(result, Normalizer.Form.NFC)) {
+      result = Normalizer.normalize(result, Normalizer.Form.NFC);
+    }
+    if (caseInsensitive) {
+      result = result.toLowerCase(Locale.ROOT);
+    }
+    return result;
+  }
+}
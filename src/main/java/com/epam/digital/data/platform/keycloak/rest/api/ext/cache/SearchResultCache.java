@@ -0,0 +1,265 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.cache;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.MatchMode;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto.Pagination;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndexEventListenerFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ProviderEvent;
+
+/**
+ * Cache of the pages found by v2 search, keyed by realm, canonical form of the search filters and
+ * pagination. Only ids of the found users and pagination of the response are cached, users are
+ * read and mapped to representations on every request.
+ * <p>
+ * Cache is bounded by the count of entries, the least recently used entries are evicted, and
+ * every entry expires after the configured time. Pages with more users than the configured max
+ * page size, e.g. results of searches without pagination, aren't cached. Any change of a user of
+ * the realm invalidates all the cached pages of the realm: the realm gets a new generation and
+ * entries of the previous generations are never returned again. Changes are taken from the user
+ * removal events of Keycloak and from the user events and admin events received by
+ * {@link AttributeIndexEventListenerFactory}
+ * and sent to all the cluster nodes after the transaction is committed, searches in realms without
+ * the listener aren't cached. Expiration bounds staleness caused by changes that produce no
+ * events, e.g. imports from user federation.
+ */
+public class SearchResultCache {
+
+  public static final String CLUSTER_EVENT_KEY = "users-search-cache";
+
+  private final int maxEntries;
+  private final long ttlMillis;
+  private final int maxPageSize;
+  private final LongSupplier clock;
+  private final Map<Key, CachedPage> entries;
+  private final ConcurrentMap<String, AtomicLong> realmGenerations = new ConcurrentHashMap<>();
+
+  private KeycloakSessionFactory sessionFactory;
+
+  /**
+   * @param maxEntries max count of cached pages, if 0 then cache is disabled
+   * @param ttlMillis   time after which a cached page expires
+   * @param maxPageSize max count of users of a cached page
+   */
+  public SearchResultCache(int maxEntries, long ttlMillis, int maxPageSize) {
+    this(maxEntries, ttlMillis, maxPageSize, System::currentTimeMillis);
+  }
+
+  SearchResultCache(int maxEntries, long ttlMillis, int maxPageSize, LongSupplier clock) {
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+    this.maxPageSize = maxPageSize;
+    this.clock = clock;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, CachedPage> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  public static SearchResultCache disabled() {
+    return new SearchResultCache(0, 0, 0);
+  }
+
+  public boolean isEnabled() {
+    return maxEntries > 0 && ttlMillis > 0;
+  }
+
+  /**
+   * Subscribes the cache to Keycloak events.
+   */
+  public void start(KeycloakSessionFactory sessionFactory) {
+    if (!isEnabled()) {
+      return;
+    }
+    this.sessionFactory = sessionFactory;
+    sessionFactory.register(this::onProviderEvent);
+    KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> session
+        .getProvider(ClusterProvider.class).registerListener(CLUSTER_EVENT_KEY,
+            event -> invalidate(((SearchResultCacheEvent) event).getRealmId())));
+  }
+
+  /**
+   * Builds the cache key of the request. The key takes the current generation of the realm, so it
+   * must be built before the search is started to make sure that users changed during the search
+   * invalidate its result.
+   *
+   * @return key of the request or {@code null} if cache is disabled or changes of the users of
+   * the realm aren't reported to the cache
+   */
+  @Nullable
+  public Key keyOf(RealmModel realm, SearchUsersByAttributesRequestDto requestDto) {
+    if (!isEnabled() || !AttributeIndexEventListenerFactory.isSubscribed(realm)) {
+      return null;
+    }
+    var pagination = requestDto.getPagination();
+    var limit = Objects.requireNonNullElse(pagination.getLimit(), 0);
+    return new Key(realm.getId(), getGeneration(realm.getId()).get(),
+        canonical(requestDto.getAttributesEquals()),
+        canonical(requestDto.getAttributesStartsWith()),
+        canonical(requestDto.getAttributesThatAreStartFor()),
+        new TreeMap<>(requestDto.getMatchModes()),
+        limit <= 0 ? -1 : limit, pagination.getContinueToken(), pagination.getCursor());
+  }
+
+  /**
+   * @return cached page or {@code null} if the page isn't cached, expired or the realm was
+   * changed after the page was cached
+   */
+  @Nullable
+  public CachedPage get(Key key) {
+    CachedPage page;
+    synchronized (entries) {
+      page = entries.get(key);
+    }
+    if (page == null) {
+      return null;
+    }
+    if (page.expiresAt <= clock.getAsLong()
+        || key.generation != getGeneration(key.realmId).get()) {
+      synchronized (entries) {
+        entries.remove(key);
+      }
+      return null;
+    }
+    return page;
+  }
+
+  /**
+   * @param userIds    ids of the users of the page, the page isn't cached if there are more
+   *                   users than the max page size
+   * @param pagination pagination of the response
+   */
+  public void put(Key key, List<String> userIds, Pagination pagination) {
+    if (userIds.size() > maxPageSize) {
+      return;
+    }
+    if (key.generation != getGeneration(key.realmId).get()) {
+      // realm was changed during the search
+      return;
+    }
+    var page = new CachedPage(List.copyOf(userIds), pagination, clock.getAsLong() + ttlMillis);
+    synchronized (entries) {
+      entries.put(key, page);
+    }
+  }
+
+  /**
+   * Notifies all the cluster nodes that a user of the realm was created, changed or removed once
+   * the transaction of the session is committed.
+   */
+  public void userChanged(KeycloakSession session, String realmId) {
+    if (!isEnabled() || sessionFactory == null) {
+      return;
+    }
+    var clusterProvider = session.getProvider(ClusterProvider.class);
+    session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+      @Override
+      protected void commitImpl() {
+        clusterProvider.notify(CLUSTER_EVENT_KEY, new SearchResultCacheEvent(realmId), false,
+            ClusterProvider.DCNotify.ALL_DCS);
+      }
+
+      @Override
+      protected void rollbackImpl() {
+        // nothing was changed
+      }
+    });
+  }
+
+  /**
+   * Makes all the cached pages of the realm stale, they're evicted on access or by newer pages.
+   */
+  public void invalidate(String realmId) {
+    getGeneration(realmId).incrementAndGet();
+  }
+
+  private void onProviderEvent(ProviderEvent event) {
+    if (event instanceof UserModel.UserRemovedEvent) {
+      var removedEvent = (UserModel.UserRemovedEvent) event;
+      userChanged(removedEvent.getKeycloakSession(), removedEvent.getRealm().getId());
+    } else if (event instanceof RealmModel.RealmRemovedEvent) {
+      invalidate(((RealmModel.RealmRemovedEvent) event).getRealm().getId());
+    }
+  }
+
+  private AtomicLong getGeneration(String realmId) {
+    return realmGenerations.computeIfAbsent(realmId, id -> new AtomicLong());
+  }
+
+  /**
+   * @return attributes sorted by name with sorted distinct values, attributes without values are
+   * skipped as they don't restrict the search
+   */
+  private static Map<String, List<String>> canonical(Map<String, List<String>> attributes) {
+    var canonical = new TreeMap<String, List<String>>();
+    attributes.forEach((name, values) -> {
+      if (values != null && !values.isEmpty()) {
+        canonical.put(name, values.stream().distinct().sorted().collect(Collectors.toList()));
+      }
+    });
+    return canonical;
+  }
+
+  @Value
+  public static class Key {
+
+    String realmId;
+    long generation;
+    Map<String, List<String>> attributesEquals;
+    Map<String, List<String>> attributesStartsWith;
+    Map<String, List<String>> attributesThatAreStartFor;
+    Map<String, Set<MatchMode>> matchModes;
+    int limit;
+    Integer continueToken;
+    String cursor;
+  }
+
+  @Getter
+  @RequiredArgsConstructor
+  public static class CachedPage {
+
+    private final List<String> userIds;
+    private final Pagination pagination;
+    private final long expiresAt;
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.cache;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.keycloak.cluster.ClusterEvent;
+
+/**
+ * Cluster event telling that a user of the realm was created, changed or removed, so every node
+ * must invalidate the pages of the realm in its {@link SearchResultCache}.
+ */
+@Getter
+@RequiredArgsConstructor
+public class SearchResultCacheEvent implements ClusterEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String realmId;
+}
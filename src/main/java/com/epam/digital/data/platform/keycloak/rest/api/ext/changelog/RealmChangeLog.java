@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.changelog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Change log of users of a single realm. Only the last change of every user is kept, ordered by
+ * the time it was received. When the log is full the oldest changes are dropped and the log
+ * covers only the changes after them.
+ */
+class RealmChangeLog {
+
+  private final int capacity;
+  private final TreeMap<Change, String> userIdsByChange = new TreeMap<>();
+  private final Map<String, Change> changesByUserId = new HashMap<>();
+  private long coveredSince;
+  private long sequence;
+
+  /**
+   * @param capacity     max count of kept changes
+   * @param coveredSince time since which all the changes are logged
+   */
+  RealmChangeLog(int capacity, long coveredSince) {
+    this.capacity = capacity;
+    this.coveredSince = coveredSince;
+  }
+
+  synchronized void add(String userId, long timestamp) {
+    var previous = changesByUserId.remove(userId);
+    if (previous != null) {
+      userIdsByChange.remove(previous);
+    }
+    var change = new Change(timestamp, sequence++);
+    changesByUserId.put(userId, change);
+    userIdsByChange.put(change, userId);
+    while (userIdsByChange.size() > capacity) {
+      var eldest = userIdsByChange.pollFirstEntry();
+      changesByUserId.remove(eldest.getValue());
+      coveredSince = Math.max(coveredSince, eldest.getKey().timestamp);
+    }
+  }
+
+  /**
+   * @return ids of the users changed after the time in the order of their last change or
+   * {@code null} if the changes after the time may be dropped from the log
+   */
+  @Nullable
+  synchronized List<String> getChangedUserIds(long since) {
+    if (since < coveredSince) {
+      return null;
+    }
+    return new ArrayList<>(
+        userIdsByChange.tailMap(new Change(since, Long.MAX_VALUE), false).values());
+  }
+
+  @EqualsAndHashCode
+  @RequiredArgsConstructor
+  private static class Change implements Comparable<Change> {
+
+    private final long timestamp;
+    private final long sequence;
+
+    @Override
+    public int compareTo(Change other) {
+      var result = Long.compare(timestamp, other.timestamp);
+      return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+  }
+}
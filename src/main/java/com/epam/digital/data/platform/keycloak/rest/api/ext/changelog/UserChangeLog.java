@@ -0,0 +1,175 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.changelog;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndexEventListenerFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ProviderEvent;
+
+/**
+ * In-memory log of user changes, one {@link RealmChangeLog} per realm, that lets clients pull only
+ * the users changed since their last pull instead of the whole filtered set.
+ * <p>
+ * Changes are taken from the user removal events of Keycloak and from the user events and admin
+ * events received by {@link AttributeIndexEventListenerFactory}, and are sent to all the cluster
+ * nodes after the transaction is committed. Every node logs a change with the time it has
+ * received it, so watermarks are shifted back by {@link #PROPAGATION_MARGIN_MILLIS} to cover the
+ * delivery delay between nodes: a change may be returned twice but isn't missed. Changes that
+ * produce no events, e.g. imports from user federation, aren't logged.
+ * <p>
+ * Changes are only known for the realms that have the event listener. A realm that has it when
+ * the log is started is covered since the start, a realm that gets it later is covered since the
+ * log has found it out. Changes of realms without the listener are never known.
+ */
+public class UserChangeLog {
+
+  public static final String CLUSTER_EVENT_KEY = "users-change-log";
+  public static final long PROPAGATION_MARGIN_MILLIS = 5000;
+
+  private final int capacity;
+  private final LongSupplier clock;
+  private final ConcurrentMap<String, RealmChangeLog> realmLogs = new ConcurrentHashMap<>();
+
+  private KeycloakSessionFactory sessionFactory;
+  private long startedAt = Long.MAX_VALUE;
+
+  /**
+   * @param capacity max count of changes kept per realm, if 0 then the log is disabled
+   */
+  public UserChangeLog(int capacity) {
+    this(capacity, System::currentTimeMillis);
+  }
+
+  UserChangeLog(int capacity, LongSupplier clock) {
+    this.capacity = capacity;
+    this.clock = clock;
+  }
+
+  public static UserChangeLog disabled() {
+    return new UserChangeLog(0);
+  }
+
+  public boolean isEnabled() {
+    return capacity > 0;
+  }
+
+  /**
+   * Subscribes the log to Keycloak events, only the changes after the start are logged.
+   */
+  public void start(KeycloakSessionFactory sessionFactory) {
+    if (!isEnabled()) {
+      return;
+    }
+    this.sessionFactory = sessionFactory;
+    this.startedAt = clock.getAsLong();
+    sessionFactory.register(this::onProviderEvent);
+    KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+      session.realms().getRealmsStream()
+          .filter(AttributeIndexEventListenerFactory::isSubscribed)
+          .forEach(realm -> realmLogs.put(realm.getId(), new RealmChangeLog(capacity, startedAt)));
+      session.getProvider(ClusterProvider.class).registerListener(CLUSTER_EVENT_KEY, event -> {
+        var changeEvent = (UserChangeEvent) event;
+        add(changeEvent.getRealmId(), changeEvent.getUserId());
+      });
+    });
+  }
+
+  /**
+   * @return watermark to pass to {@link #getChangedUserIds(RealmModel, long)} to get the changes
+   * received after this call
+   */
+  public long getWatermark() {
+    return clock.getAsLong() - PROPAGATION_MARGIN_MILLIS;
+  }
+
+  /**
+   * @return ids of the users of the realm changed after the watermark or {@code null} if the log
+   * doesn't cover all the changes after the watermark, e.g. the log is disabled, the node was
+   * started after the watermark, the realm hasn't had the event listener since the watermark or
+   * the changes were dropped as the log was full
+   */
+  @Nullable
+  public List<String> getChangedUserIds(RealmModel realm, long watermark) {
+    if (!isEnabled() || watermark < startedAt) {
+      return null;
+    }
+    if (!AttributeIndexEventListenerFactory.isSubscribed(realm)) {
+      // changes logged before the listener was removed don't cover the time without it
+      realmLogs.remove(realm.getId());
+      return null;
+    }
+    return getRealmLog(realm.getId()).getChangedUserIds(watermark);
+  }
+
+  /**
+   * Notifies all the cluster nodes that the user was created, changed or removed once the
+   * transaction of the session is committed.
+   */
+  public void userChanged(KeycloakSession session, String realmId, String userId) {
+    if (!isEnabled() || sessionFactory == null) {
+      return;
+    }
+    var clusterProvider = session.getProvider(ClusterProvider.class);
+    session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+      @Override
+      protected void commitImpl() {
+        clusterProvider.notify(CLUSTER_EVENT_KEY, new UserChangeEvent(realmId, userId), false,
+            ClusterProvider.DCNotify.ALL_DCS);
+      }
+
+      @Override
+      protected void rollbackImpl() {
+        // nothing was changed
+      }
+    });
+  }
+
+  void add(String realmId, String userId) {
+    getRealmLog(realmId).add(userId, clock.getAsLong());
+  }
+
+  /**
+   * @return log of the realm, a log created after the start covers only the changes received
+   * after it was created
+   */
+  private RealmChangeLog getRealmLog(String realmId) {
+    return realmLogs.computeIfAbsent(realmId,
+        id -> new RealmChangeLog(capacity, clock.getAsLong()));
+  }
+
+  private void onProviderEvent(ProviderEvent event) {
+    if (event instanceof UserModel.UserRemovedEvent) {
+      var removedEvent = (UserModel.UserRemovedEvent) event;
+      userChanged(removedEvent.getKeycloakSession(), removedEvent.getRealm().getId(),
+          removedEvent.getUser().getId());
+    } else if (event instanceof RealmModel.RealmRemovedEvent) {
+      realmLogs.remove(((RealmModel.RealmRemovedEvent) event).getRealm().getId());
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2;
+
+import java.util.Map;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Representation of attribute statistics response body.
+ * <p>
+ * {@code userCount} is the count of all the users of the realm and {@code computedAt} is the time
+ * the statistics were computed at in milliseconds since the epoch. For every attribute that any
+ * user has {@code attributes} contains the count of users that have it, their share of all the
+ * users ({@code coverage}), the count of distinct values and the most common values with count of
+ * users that have them.
+ *
+ * @see com.epam.digital.data.platform.keycloak.rest.api.ext.UserApiProvider#getAttributeStats(org.jboss.resteasy.spi.HttpRequest)
+ * request method itself
+ */
+@Builder
+@Getter
+public class AttributeStatsResponseDto {
+
+  private final long userCount;
+  private final long computedAt;
+  private final Map<String, AttributeStatsDto> attributes;
+
+  @Builder
+  @Getter
+  public static class AttributeStatsDto {
+
+    private final long userCount;
+    private final double coverage;
+    private final long distinctValues;
+    private final Map<String, Long> topValues;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import lombok.Setter;
+import org.jboss.resteasy.spi.HttpRequest;
+
+/**
+ * Representation of batch search users by attributes request body.
+ * <p>
+ * {@link BatchSearchUsersByAttributesRequestDto#getQueries() getQueries()} contains named
+ * {@link SearchUsersByAttributesRequestDto search requests}, none of them may be {@code null}.
+ * Every request selects users the same way as a single search, requests that filter all the users
+ * in memory share a single pass over users of the realm. The response contains the result of
+ * every request under the same name. Pagination of every request is independent, continue tokens
+ * and cursors returned for a request continue it in the next batch search.
+ *
+ * @see com.epam.digital.data.platform.keycloak.rest.api.ext.UserApiProvider#batchSearchUsersByAttributes(HttpRequest,
+ * BatchSearchUsersByAttributesRequestDto) request method itself
+ * @see BatchSearchUsersByAttributesResponseDto representation of the response body
+ */
+@Setter
+public class BatchSearchUsersByAttributesRequestDto {
+
+  private Map<String, SearchUsersByAttributesRequestDto> queries;
+
+  @Nonnull
+  public Map<String, SearchUsersByAttributesRequestDto> getQueries() {
+    return new LinkedHashMap<>(Objects.requireNonNullElse(queries, Map.of()));
+  }
+}
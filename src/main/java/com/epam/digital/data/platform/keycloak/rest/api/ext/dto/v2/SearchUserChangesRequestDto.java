@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2;
+
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.Setter;
+import org.jboss.resteasy.spi.HttpRequest;
+
+/**
+ * Representation of search user changes request body.
+ * <p>
+ * {@link SearchUserChangesRequestDto#getQuery() getQuery()} contains the filters and the
+ * projection of a {@link SearchUsersByAttributesRequestDto search request}, its pagination is
+ * ignored. {@link SearchUserChangesRequestDto#getSince() getSince()} is the watermark returned by
+ * the previous request. If it isn't set or the changes since it aren't known anymore then the
+ * response asks to search all the users again.
+ *
+ * @see com.epam.digital.data.platform.keycloak.rest.api.ext.UserApiProvider#searchUserChanges(HttpRequest,
+ * SearchUserChangesRequestDto) request method itself
+ * @see SearchUserChangesResponseDto representation of the response body
+ */
+@Setter
+public class SearchUserChangesRequestDto {
+
+  private SearchUsersByAttributesRequestDto query;
+
+  @Getter
+  @Nullable
+  private Long since;
+
+  @Nonnull
+  public SearchUsersByAttributesRequestDto getQuery() {
+    return Objects.requireNonNullElseGet(query, SearchUsersByAttributesRequestDto::new);
+  }
+}
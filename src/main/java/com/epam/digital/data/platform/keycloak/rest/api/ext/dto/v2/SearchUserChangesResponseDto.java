@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+import org.keycloak.representations.idm.UserRepresentation;
+
+/**
+ * Representation of search user changes response body.
+ * <p>
+ * {@code users} are the users changed since the watermark of the request that match the filters
+ * now, {@code unmatchedUserIds} are the users changed since the watermark that were removed or
+ * don't match the filters now. Attributes of the users before the change aren't known, so they
+ * may have left the result set or never been in it, the client drops those it holds.
+ * {@code watermark} must be passed as {@code since} to the next request. If
+ * {@code resyncRequired} is {@code true} then changes since the requested watermark aren't known,
+ * the client must search all the users again and continue from the returned {@code watermark}.
+ *
+ * @see SearchUserChangesRequestDto representation of the request body
+ */
+@Builder
+@Getter
+public class SearchUserChangesResponseDto {
+
+  private final List<UserRepresentation> users;
+  private final List<String> unmatchedUserIds;
+  private final long watermark;
+  private final boolean resyncRequired;
+}
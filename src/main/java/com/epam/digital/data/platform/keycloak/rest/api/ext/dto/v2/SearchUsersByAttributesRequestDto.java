@@ -16,10 +16,13 @@
 
 package com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import lombok.Getter;
 import lombok.Setter;
 import org.jboss.resteasy.spi.HttpRequest;
@@ -47,8 +50,19 @@ import org.jboss.resteasy.spi.HttpRequest;
  * {@code ["value1", "value2"]} then user must have an attribute named {@code attr1} with any of the
  * values to be returned.
  * <p>
+ * {@link SearchUsersByAttributesRequestDto#getMatchModes() getMatchModes()} optionally sets how
+ * values of an attribute are compared in all the maps, e.g.
+ * {@code "matchModes":{"fullName":["CASE_INSENSITIVE","TRIMMED"]}}. By default values are compared
+ * exactly.
+ * <p>
  * Pagination of the request implemented with {@code continuationToken}. It means that response will
- * return a token which must be used as anchor for the next page.
+ * return a token which must be used as anchor for the next page. Response also returns an opaque
+ * {@code cursor} that can be passed instead of the token, it selects the next page by seek rather
+ * than by offset.
+ * <p>
+ * {@link SearchUsersByAttributesRequestDto#getProjection() getProjection()} optionally limits the
+ * returned user representation to the listed fields (e.g. {@code id}, {@code username}) and
+ * attributes. If it isn't set the full user representation is returned.
  *
  * @see com.epam.digital.data.platform.keycloak.rest.api.ext.UserApiProvider#searchUsersByAttributes(HttpRequest,
  * SearchUsersByAttributesRequestDto) request method itself
@@ -60,10 +74,15 @@ public class SearchUsersByAttributesRequestDto {
   private Map<String, List<String>> attributesEquals;
   private Map<String, List<String>> attributesStartsWith;
   private Map<String, List<String>> attributesThatAreStartFor;
+  private Map<String, List<MatchMode>> matchModes;
 
   @Getter
   private Pagination pagination = new Pagination();
 
+  @Getter
+  @Nullable
+  private Projection projection;
+
   @Nonnull
   public Map<String, List<String>> getAttributesEquals() {
     return Map.copyOf(Objects.requireNonNullElse(attributesEquals, Map.of()));
@@ -79,11 +98,62 @@ public class SearchUsersByAttributesRequestDto {
     return Map.copyOf(Objects.requireNonNullElse(attributesThatAreStartFor, Map.of()));
   }
 
+  /**
+   * @return match modes of the attributes, attributes without modes are compared exactly
+   */
+  @Nonnull
+  public Map<String, Set<MatchMode>> getMatchModes() {
+    var modes = new HashMap<String, Set<MatchMode>>();
+    Objects.requireNonNullElse(matchModes, Map.<String, List<MatchMode>>of())
+        .forEach((name, attributeModes) -> {
+          if (attributeModes != null && !attributeModes.isEmpty()) {
+            modes.put(name, Set.copyOf(attributeModes));
+          }
+        });
+    return modes;
+  }
+
+  /**
+   * How values of an attribute are compared, both requested and user values are normalized
+   * before comparison.
+   */
+  public enum MatchMode {
+    /**
+     * Values are compared in lower case
+     */
+    CASE_INSENSITIVE,
+    /**
+     * Values are compared in Unicode NFC form, so composed and decomposed characters are equal
+     */
+    NORMALIZED,
+    /**
+     * Leading and trailing whitespaces of values are ignored
+     */
+    TRIMMED
+  }
+
   @Setter
   @Getter
   public static class Pagination {
 
     private Integer limit;
     private Integer continueToken;
+    private String cursor;
+  }
+
+  @Setter
+  @Getter
+  public static class Projection {
+
+    /**
+     * Names of {@link org.keycloak.representations.idm.UserRepresentation} fields to return, one
+     * of {@code id}, {@code username}, {@code firstName}, {@code lastName}, {@code email},
+     * {@code emailVerified}, {@code enabled}, {@code createdTimestamp}, {@code federationLink}
+     */
+    private List<String> fields;
+    /**
+     * Names of user attributes to return
+     */
+    private List<String> attributes;
   }
 }
@@ -33,5 +33,6 @@ public class SearchUsersByAttributesResponseDto {
   public static class Pagination {
 
     private Integer continueToken;
+    private String cursor;
   }
 }
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.jboss.logging.Logger;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.timer.TimerProvider;
+
+/**
+ * In-memory inverted index of the configured user attributes, one {@link RealmAttributeIndex} per
+ * realm. Index of a realm is built in background on the first search in the realm; until it's
+ * built searches go to the database.
+ * <p>
+ * Index is kept current by:
+ * <ul>
+ *   <li>user removal events of Keycloak</li>
+ *   <li>user events and admin events received by {@link AttributeIndexEventListenerFactory}, the
+ *   listener must be enabled in the realm, otherwise searches in the realm don't use the index</li>
+ *   <li>rebuild of all the indexes with the configured interval, it bounds staleness caused by
+ *   changes that produce no events, e.g. imports from user federation</li>
+ * </ul>
+ * Changes are sent to all the cluster nodes after the transaction is committed, every node then
+ * re-reads the user. Found users are always checked against the search filters, so a stale index
+ * may miss a user but never returns a user that doesn't match.
+ */
+public class AttributeIndex {
+
+  public static final String CLUSTER_EVENT_KEY = "users-attribute-index";
+
+  private static final Logger LOG = Logger.getLogger(AttributeIndex.class);
+  private static final String REFRESH_TASK_NAME = "users-attribute-index-refresh";
+
+  private final List<String> attributeNames;
+  private final List<String> sortedAttributeNames;
+  private final long refreshIntervalMillis;
+  private final ConcurrentMap<String, RealmAttributeIndex> realmIndexes =
+      new ConcurrentHashMap<>();
+  // ids of the users changed while index of the realm is built, they're re-read after the build
+  private final ConcurrentMap<String, Set<String>> changedWhileBuilding = new ConcurrentHashMap<>();
+
+  private KeycloakSessionFactory sessionFactory;
+  private ExecutorService executor;
+
+  /**
+   * @param attributeNames        names of the indexed attributes, if empty then index is disabled
+   * @param refreshIntervalMillis interval of the index rebuild
+   */
+  public AttributeIndex(List<String> attributeNames, long refreshIntervalMillis) {
+    this(attributeNames, List.of(), refreshIntervalMillis);
+  }
+
+  /**
+   * @param attributeNames        names of the indexed attributes
+   * @param sortedAttributeNames  names of the indexed attributes that are looked up by prefix
+   * @param refreshIntervalMillis interval of the index rebuild
+   */
+  public AttributeIndex(List<String> attributeNames, List<String> sortedAttributeNames,
+      long refreshIntervalMillis) {
+    var names = new LinkedHashSet<>(attributeNames);
+    names.addAll(sortedAttributeNames);
+    this.attributeNames = List.copyOf(names);
+    this.sortedAttributeNames = List.copyOf(sortedAttributeNames);
+    this.refreshIntervalMillis = refreshIntervalMillis;
+  }
+
+  public static AttributeIndex disabled() {
+    return new AttributeIndex(List.of(), 0);
+  }
+
+  public boolean isEnabled() {
+    return !attributeNames.isEmpty();
+  }
+
+  public List<String> getAttributeNames() {
+    return attributeNames;
+  }
+
+  /**
+   * Subscribes the index to Keycloak events and schedules the periodic rebuild.
+   */
+  public void start(KeycloakSessionFactory sessionFactory) {
+    if (!isEnabled()) {
+      return;
+    }
+    this.sessionFactory = sessionFactory;
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      var thread = new Thread(runnable, "users-attribute-index");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sessionFactory.register(this::onProviderEvent);
+    KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+      session.getProvider(ClusterProvider.class).registerListener(CLUSTER_EVENT_KEY,
+          event -> {
+            var indexEvent = (AttributeIndexEvent) event;
+            executor.execute(() -> reindexUser(indexEvent.getRealmId(), indexEvent.getUserId()));
+          });
+      if (refreshIntervalMillis > 0) {
+        session.getProvider(TimerProvider.class).scheduleTask(
+            taskSession -> realmIndexes.keySet().forEach(this::scheduleBuild),
+            refreshIntervalMillis, REFRESH_TASK_NAME);
+      }
+    });
+  }
+
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return index of the realm or {@code null} if index is disabled, the realm isn't subscribed to
+   * {@link AttributeIndexEventListenerFactory} or the index is not built yet, in the latter case
+   * the build is started
+   */
+  @Nullable
+  public RealmAttributeIndex get(RealmModel realm) {
+    if (!isEnabled() || sessionFactory == null) {
+      return null;
+    }
+    if (!AttributeIndexEventListenerFactory.isSubscribed(realm)) {
+      // without the events the index would be stale until the next rebuild
+      return null;
+    }
+    var index = realmIndexes.get(realm.getId());
+    if (index == null) {
+      scheduleBuild(realm.getId());
+    }
+    return index;
+  }
+
+  /**
+   * Notifies all the cluster nodes that the user was created, changed or removed once the
+   * transaction of the session is committed.
+   */
+  public void userChanged(KeycloakSession session, String realmId, String userId) {
+    if (!isEnabled() || sessionFactory == null) {
+      return;
+    }
+    var clusterProvider = session.getProvider(ClusterProvider.class);
+    session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+      @Override
+      protected void commitImpl() {
+        clusterProvider.notify(CLUSTER_EVENT_KEY, new AttributeIndexEvent(realmId, userId),
+            false, ClusterProvider.DCNotify.ALL_DCS);
+      }
+
+      @Override
+      protected void rollbackImpl() {
+        // nothing was changed
+      }
+    });
+  }
+
+  private void onProviderEvent(ProviderEvent event) {
+    if (event instanceof UserModel.UserRemovedEvent) {
+      var removedEvent = (UserModel.UserRemovedEvent) event;
+      userChanged(removedEvent.getKeycloakSession(), removedEvent.getRealm().getId(),
+          removedEvent.getUser().getId());
+    } else if (event instanceof RealmModel.RealmRemovedEvent) {
+      realmIndexes.remove(((RealmModel.RealmRemovedEvent) event).getRealm().getId());
+    }
+  }
+
+  private void scheduleBuild(String realmId) {
+    if (changedWhileBuilding.putIfAbsent(realmId, ConcurrentHashMap.newKeySet()) != null) {
+      // already building
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        var start = System.nanoTime();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+          var realm = session.realms().getRealm(realmId);
+          if (realm == null) {
+            realmIndexes.remove(realmId);
+            return;
+          }
+          var index = RealmAttributeIndexLoader.load(session, realm, attributeNames,
+              sortedAttributeNames);
+          realmIndexes.put(realmId, index);
+          LOG.debugf("Attribute index of realm %s with %d users built in %d ms", realm.getName(),
+              index.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        });
+      } catch (RuntimeException e) {
+        LOG.warnf(e, "Failed to build attribute index of realm %s", realmId);
+      } finally {
+        var changed = changedWhileBuilding.remove(realmId);
+        changed.forEach(userId -> reindexUser(realmId, userId));
+      }
+    });
+  }
+
+  private void reindexUser(String realmId, String userId) {
+    var building = changedWhileBuilding.get(realmId);
+    if (building != null) {
+      building.add(userId);
+    }
+    var index = realmIndexes.get(realmId);
+    if (index == null) {
+      return;
+    }
+    try {
+      KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+        var realm = session.realms().getRealm(realmId);
+        var user = realm == null ? null : session.users().getUserById(realm, userId);
+        if (user == null || !RealmAttributeIndexLoader.isIndexed(user)) {
+          index.remove(userId);
+        } else {
+          index.put(userId, user.getUsername(),
+              RealmAttributeIndexLoader.getIndexedAttributes(user, attributeNames));
+        }
+      });
+    } catch (RuntimeException e) {
+      LOG.warnf(e, "Failed to update attribute index of user %s in realm %s", userId, realmId);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserApiProviderFactory;
+import java.util.Set;
+import org.keycloak.Config.Scope;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventListenerProviderFactory;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.services.resource.RealmResourceProvider;
+
+/**
+ * Event listener {@value #ID} that updates {@link AttributeIndex}, invalidates
+ * {@link com.epam.digital.data.platform.keycloak.rest.api.ext.cache.SearchResultCache} and logs
+ * the change to {@link com.epam.digital.data.platform.keycloak.rest.api.ext.changelog.UserChangeLog}
+ * when users are created or changed through the admin API, registration or account management.
+ * The listener must be added to the event listeners of every realm that uses any of them.
+ */
+public class AttributeIndexEventListenerFactory implements EventListenerProviderFactory {
+
+  public static final String ID = "users-attribute-index";
+
+  private static final Set<EventType> USER_CHANGE_EVENTS = Set.of(EventType.REGISTER,
+      EventType.UPDATE_PROFILE, EventType.UPDATE_EMAIL, EventType.IDENTITY_PROVIDER_FIRST_LOGIN);
+  private static final Set<OperationType> USER_CHANGE_OPERATIONS = Set.of(OperationType.CREATE,
+      OperationType.UPDATE, OperationType.DELETE);
+  private static final String USERS_PATH = "users/";
+
+  @Override
+  public EventListenerProvider create(KeycloakSession session) {
+    var providerFactory = (UserApiProviderFactory) session.getKeycloakSessionFactory()
+        .getProviderFactory(RealmResourceProvider.class, UserApiProviderFactory.ID);
+    var attributeIndex = providerFactory.getAttributeIndex();
+    var searchResultCache = providerFactory.getSearchResultCache();
+    var userChangeLog = providerFactory.getUserChangeLog();
+    return new EventListenerProvider() {
+      @Override
+      public void onEvent(Event event) {
+        if (USER_CHANGE_EVENTS.contains(event.getType()) && event.getUserId() != null) {
+          attributeIndex.userChanged(session, event.getRealmId(), event.getUserId());
+          searchResultCache.userChanged(session, event.getRealmId());
+          userChangeLog.userChanged(session, event.getRealmId(), event.getUserId());
+        }
+      }
+
+      @Override
+      public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        var userId = getUserId(event);
+        if (userId != null) {
+          attributeIndex.userChanged(session, event.getRealmId(), userId);
+          searchResultCache.userChanged(session, event.getRealmId());
+          userChangeLog.userChanged(session, event.getRealmId(), userId);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  /**
+   * @return id of the user if the event is creation, update or removal of a user, e.g. path
+   * {@code users/{id}}, and {@code null} otherwise
+   */
+  static String getUserId(AdminEvent event) {
+    var path = event.getResourcePath();
+    if (event.getResourceType() != ResourceType.USER
+        || !USER_CHANGE_OPERATIONS.contains(event.getOperationType())
+        || path == null || !path.startsWith(USERS_PATH)) {
+      return null;
+    }
+    var userId = path.substring(USERS_PATH.length());
+    return userId.isEmpty() || userId.contains("/") ? null : userId;
+  }
+
+  /**
+   * @return {@code true} if the listener is added to the event listeners of the realm, otherwise
+   * changes of the users of the realm aren't reported
+   */
+  public static boolean isSubscribed(RealmModel realm) {
+    return realm.getEventsListenersStream().anyMatch(ID::equals);
+  }
+
+  @Override
+  public void init(Scope config) {
+  }
+
+  @Override
+  public void postInit(KeycloakSessionFactory factory) {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public String getId() {
+    return ID;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Set of user ordinals that have an attribute value. Sparse sets are kept as a sorted array of
+ * ordinals and turned into a {@link BitSet} when the bitmap becomes smaller than the array, so a
+ * unique value costs a few bytes and a value shared by most of the users costs a bit per user.
+ * <p>
+ * While the index is built ordinals are appended unsorted and sorted once by {@link #seal()}.
+ * Not thread safe, guarded by the lock of {@link RealmAttributeIndex}.
+ */
+class Postings {
+
+  private static final int MIN_BITMAP_SIZE = 1024;
+
+  private int[] ordinals = new int[1];
+  private int size;
+  private BitSet bitmap;
+  private boolean sealed;
+
+  void add(int ordinal) {
+    if (bitmap != null) {
+      if (!bitmap.get(ordinal)) {
+        bitmap.set(ordinal);
+        size++;
+      }
+      return;
+    }
+    if (!sealed || size == 0 || ordinals[size - 1] < ordinal) {
+      append(ordinal);
+    } else {
+      var index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+      if (index >= 0) {
+        return;
+      }
+      insert(-index - 1, ordinal);
+    }
+    if (sealed) {
+      compact();
+    }
+  }
+
+  void remove(int ordinal) {
+    if (bitmap != null) {
+      if (bitmap.get(ordinal)) {
+        bitmap.clear(ordinal);
+        size--;
+      }
+      return;
+    }
+    var index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+    if (index >= 0) {
+      System.arraycopy(ordinals, index + 1, ordinals, index, size - index - 1);
+      size--;
+    }
+  }
+
+  boolean contains(int ordinal) {
+    return bitmap != null ? bitmap.get(ordinal)
+        : Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Passes the ordinals to the consumer in ascending order while it returns {@code true}.
+   */
+  void forEachWhile(IntPredicate consumer) {
+    if (bitmap != null) {
+      forEachWhile(bitmap, consumer);
+      return;
+    }
+    for (var i = 0; i < size && consumer.test(ordinals[i]); i++) {
+      // consumer does the work
+    }
+  }
+
+  static void forEachWhile(BitSet bitmap, IntPredicate consumer) {
+    for (var ordinal = bitmap.nextSetBit(0); ordinal >= 0 && consumer.test(ordinal);
+        ordinal = bitmap.nextSetBit(ordinal + 1)) {
+      // consumer does the work
+    }
+  }
+
+  void addTo(BitSet target) {
+    if (bitmap != null) {
+      target.or(bitmap);
+      return;
+    }
+    for (var i = 0; i < size; i++) {
+      target.set(ordinals[i]);
+    }
+  }
+
+  /**
+   * Sorts and deduplicates the ordinals appended while the index was built.
+   */
+  void seal() {
+    if (sealed) {
+      return;
+    }
+    sealed = true;
+    Arrays.sort(ordinals, 0, size);
+    var unique = 0;
+    for (var i = 0; i < size; i++) {
+      if (unique == 0 || ordinals[unique - 1] != ordinals[i]) {
+        ordinals[unique++] = ordinals[i];
+      }
+    }
+    size = unique;
+    compact();
+  }
+
+  private void append(int ordinal) {
+    if (size == ordinals.length) {
+      ordinals = Arrays.copyOf(ordinals, size * 2);
+    }
+    ordinals[size++] = ordinal;
+  }
+
+  private void insert(int index, int ordinal) {
+    if (size == ordinals.length) {
+      ordinals = Arrays.copyOf(ordinals, size * 2);
+    }
+    System.arraycopy(ordinals, index, ordinals, index + 1, size - index);
+    ordinals[index] = ordinal;
+    size++;
+  }
+
+  private void compact() {
+    if (size == 0) {
+      ordinals = new int[1];
+      return;
+    }
+    var maxOrdinal = ordinals[size - 1];
+    // bitmap takes a bit per ordinal up to the max one, array takes 32 bits per ordinal
+    if (size >= MIN_BITMAP_SIZE && maxOrdinal < size * 32L) {
+      bitmap = new BitSet(maxOrdinal + 1);
+      for (var i = 0; i < size; i++) {
+        bitmap.set(ordinals[i]);
+      }
+      ordinals = null;
+    } else if (ordinals.length > size * 2) {
+      ordinals = Arrays.copyOf(ordinals, size);
+    }
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Inverted index of the attributes of users of a single realm: attribute name to value to the set
+ * of users that have the value. Every indexed user gets a dense ordinal, sets of users are kept as
+ * {@link Postings} of the ordinals. Values of sorted attributes, e.g. hierarchy codes, are kept in
+ * a sorted map, so users with values that start with a prefix are found by a range scan.
+ * <p>
+ * Ordinals are assigned in the order the users were added, ordinals of removed users aren't
+ * reused until the index is rebuilt. Username of every user is kept with the ordinal, so found
+ * users are returned in username order and pages are selected by seeking after the last returned
+ * username, the same way as the database does. Usernames are compared as Java strings, the order
+ * may differ from the collation of the database for usernames with punctuation or non-ASCII
+ * characters, so a search that moves between the index and the database may skip or repeat such
+ * users.
+ * <p>
+ * Thread safe, searches share a read lock and updates take a write lock.
+ */
+public class RealmAttributeIndex {
+
+  private final List<String> attributeNames;
+  private final Map<String, Integer> attributePositions = new HashMap<>();
+  private final List<Map<String, Postings>> postings = new ArrayList<>();
+
+  private final Map<String, Integer> ordinals = new HashMap<>();
+  private final List<String> userIds = new ArrayList<>();
+  private final List<String> usernames = new ArrayList<>();
+  // values of the indexed attributes of every user, needed to update postings when user changes
+  private final List<String[][]> userValues = new ArrayList<>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  RealmAttributeIndex(Collection<String> attributeNames) {
+    this(attributeNames, Set.of());
+  }
+
+  /**
+   * @param attributeNames       names of the indexed attributes
+   * @param sortedAttributeNames names of the indexed attributes which values are kept sorted, so
+   *                             they can be looked up by prefix
+   */
+  RealmAttributeIndex(Collection<String> attributeNames,
+      Collection<String> sortedAttributeNames) {
+    var names = new LinkedHashSet<>(attributeNames);
+    names.addAll(sortedAttributeNames);
+    this.attributeNames = List.copyOf(names);
+    for (var i = 0; i < this.attributeNames.size(); i++) {
+      var name = this.attributeNames.get(i);
+      attributePositions.put(name, i);
+      postings.add(sortedAttributeNames.contains(name) ? new TreeMap<>() : new HashMap<>());
+    }
+  }
+
+  public List<String> getAttributeNames() {
+    return attributeNames;
+  }
+
+  /**
+   * @return {@code true} if all the attributes are indexed
+   */
+  public boolean covers(Collection<String> names) {
+    return attributePositions.keySet().containsAll(names);
+  }
+
+  /**
+   * @return {@code true} if values of the attribute are kept sorted
+   */
+  public boolean isSorted(String name) {
+    var position = attributePositions.get(name);
+    return position != null && postings.get(position) instanceof NavigableMap;
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return ordinals.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return count of users that have the value of the attribute, the index may be stale, so it's
+   * only an estimate of the count in the storage
+   * @throws IllegalArgumentException if the attribute isn't indexed
+   */
+  public int countUsers(String attributeName, String value) {
+    lock.readLock().lock();
+    try {
+      var valuePostings = getPostings(attributeName).get(value);
+      return valuePostings == null ? 0 : valuePostings.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Counts the indexed users up to and including the username.
+   *
+   * @return count of the users whose username isn't greater than the username
+   */
+  public int countUsersUpTo(String username) {
+    lock.readLock().lock();
+    try {
+      var count = 0;
+      for (var indexedUsername : usernames) {
+        if (indexedUsername != null && indexedUsername.compareTo(username) <= 0) {
+          count++;
+        }
+      }
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds ids of users that have any of the values of every {@code attributesEquals} attribute and
+   * a value that starts with any of the prefixes of every {@code attributesStartsWith} attribute.
+   * Attributes without values don't restrict the search. Prefixes are looked up as ranges of the
+   * sorted values.
+   * <p>
+   * Ordinals don't follow usernames after the index is updated, so all the matched users are
+   * visited and only the page of the first usernames is kept on a bounded heap.
+   *
+   * @param attributesEquals     indexed attributes and their values
+   * @param attributesStartsWith sorted attributes and their prefixes
+   * @param afterUsername        if not {@code null} only users with greater username are returned
+   * @param maxResults           max count of users to return, negative for all the found users
+   * @return ids of the found users ordered by username
+   * @throws IllegalArgumentException if any of the attributes isn't indexed or a prefix is
+   *                                  requested for an attribute that isn't sorted
+   */
+  public List<String> findUserIds(Map<String, List<String>> attributesEquals,
+      Map<String, List<String>> attributesStartsWith, @Nullable String afterUsername,
+      int maxResults) {
+    if (maxResults == 0) {
+      return List.of();
+    }
+    lock.readLock().lock();
+    try {
+      var conditions = new ArrayList<List<Postings>>();
+      if (!addEqualsConditions(attributesEquals, conditions)
+          || !addStartsWithConditions(attributesStartsWith, conditions)) {
+        return List.of();
+      }
+      Comparator<Integer> byUsername = Comparator.comparing(usernames::get);
+      // the greatest username is on top, so it's dropped when the page is exceeded
+      var page = new PriorityQueue<>(byUsername.reversed());
+      IntConsumer collector = ordinal -> {
+        var username = usernames.get(ordinal);
+        if (username != null && (afterUsername == null || username.compareTo(afterUsername) > 0)) {
+          page.add(ordinal);
+          if (maxResults >= 0 && page.size() > maxResults) {
+            page.poll();
+          }
+        }
+      };
+      if (conditions.isEmpty()) {
+        for (var ordinal = 0; ordinal < usernames.size(); ordinal++) {
+          collector.accept(ordinal);
+        }
+      } else {
+        // iterate over the smallest set of users and check them against the others
+        conditions.sort(Comparator.comparingInt(RealmAttributeIndex::size));
+        var others = conditions.subList(1, conditions.size());
+        forEachOrdinalWhile(conditions.get(0), ordinal -> {
+          if (matchesAll(others, ordinal)) {
+            collector.accept(ordinal);
+          }
+          return true;
+        });
+      }
+      return page.stream()
+          .sorted(byUsername)
+          .map(userIds::get)
+          .collect(Collectors.toList());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds the user or replaces the indexed values of the user.
+   *
+   * @param attributes all the attributes of the user, not indexed ones are ignored
+   */
+  public void put(String userId, String username,
+      Map<String, ? extends Collection<String>> attributes) {
+    lock.writeLock().lock();
+    try {
+      var ordinal = ordinals.get(userId);
+      if (ordinal == null) {
+        ordinal = addUser(userId, username);
+      } else {
+        removeValues(ordinal);
+        usernames.set(ordinal, username);
+      }
+      for (var entry : attributes.entrySet()) {
+        var position = attributePositions.get(entry.getKey());
+        if (position != null) {
+          for (var value : entry.getValue()) {
+            addValue(ordinal, position, value, true);
+          }
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(String userId) {
+    lock.writeLock().lock();
+    try {
+      var ordinal = ordinals.remove(userId);
+      if (ordinal != null) {
+        removeValues(ordinal);
+        userIds.set(ordinal, null);
+        usernames.set(ordinal, null);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds the user while the index is built and isn't shared yet.
+   */
+  int addUser(String userId, String username) {
+    var ordinal = userIds.size();
+    ordinals.put(userId, ordinal);
+    userIds.add(userId);
+    usernames.add(username);
+    userValues.add(new String[attributeNames.size()][]);
+    return ordinal;
+  }
+
+  /**
+   * Adds the attribute value of the user while the index is built and isn't shared yet. Values of
+   * not indexed attributes and of unknown users are ignored.
+   */
+  void addValue(String userId, String attributeName, String value) {
+    var ordinal = ordinals.get(userId);
+    var position = attributePositions.get(attributeName);
+    if (ordinal != null && position != null) {
+      addValue(ordinal, position, value, false);
+    }
+  }
+
+  /**
+   * Finishes the build, the index may be shared after that.
+   */
+  void seal() {
+    postings.forEach(valuePostings -> valuePostings.values().forEach(Postings::seal));
+  }
+
+  private void addValue(int ordinal, int position, String value, boolean seal) {
+    if (value == null) {
+      return;
+    }
+    var valuePostings = postings.get(position).computeIfAbsent(value, key -> new Postings());
+    valuePostings.add(ordinal);
+    if (seal) {
+      valuePostings.seal();
+    }
+    var values = userValues.get(ordinal);
+    var current = values[position];
+    if (current == null) {
+      values[position] = new String[]{value};
+    } else {
+      var extended = new String[current.length + 1];
+      System.arraycopy(current, 0, extended, 0, current.length);
+      extended[current.length] = value;
+      values[position] = extended;
+    }
+  }
+
+  private void removeValues(int ordinal) {
+    var values = userValues.get(ordinal);
+    for (var position = 0; position < values.length; position++) {
+      if (values[position] == null) {
+        continue;
+      }
+      for (var value : values[position]) {
+        var valuePostings = postings.get(position).get(value);
+        if (valuePostings != null) {
+          valuePostings.remove(ordinal);
+          if (valuePostings.isEmpty()) {
+            postings.get(position).remove(value);
+          }
+        }
+      }
+      values[position] = null;
+    }
+  }
+
+  /**
+   * @return {@code false} if any of the attributes has no users with the requested values
+   */
+  private boolean addEqualsConditions(Map<String, List<String>> attributesEquals,
+      List<List<Postings>> conditions) {
+    for (var entry : attributesEquals.entrySet()) {
+      if (entry.getValue() == null || entry.getValue().isEmpty()) {
+        continue;
+      }
+      var valuePostings = new ArrayList<Postings>();
+      var attributePostings = getPostings(entry.getKey());
+      for (var value : entry.getValue()) {
+        var valuePosting = attributePostings.get(value);
+        if (valuePosting != null && !valuePosting.isEmpty()) {
+          valuePostings.add(valuePosting);
+        }
+      }
+      if (valuePostings.isEmpty()) {
+        return false;
+      }
+      conditions.add(valuePostings);
+    }
+    return true;
+  }
+
+  /**
+   * @return {@code false} if any of the attributes has no users with the requested prefixes
+   */
+  private boolean addStartsWithConditions(Map<String, List<String>> attributesStartsWith,
+      List<List<Postings>> conditions) {
+    for (var entry : attributesStartsWith.entrySet()) {
+      if (entry.getValue() == null || entry.getValue().isEmpty()) {
+        continue;
+      }
+      if (!(getPostings(entry.getKey()) instanceof NavigableMap)) {
+        throw new IllegalArgumentException("Attribute isn't sorted: " + entry.getKey());
+      }
+      var sortedPostings = (NavigableMap<String, Postings>) getPostings(entry.getKey());
+      var valuePostings = new ArrayList<Postings>();
+      for (var prefix : entry.getValue()) {
+        for (var valueEntry : sortedPostings.tailMap(prefix, true).entrySet()) {
+          if (!valueEntry.getKey().startsWith(prefix)) {
+            break;
+          }
+          valuePostings.add(valueEntry.getValue());
+        }
+      }
+      if (valuePostings.isEmpty()) {
+        return false;
+      }
+      conditions.add(valuePostings);
+    }
+    return true;
+  }
+
+  private Map<String, Postings> getPostings(String attributeName) {
+    var position = attributePositions.get(attributeName);
+    if (position == null) {
+      throw new IllegalArgumentException("Attribute isn't indexed: " + attributeName);
+    }
+    return postings.get(position);
+  }
+
+  private static void forEachOrdinalWhile(List<Postings> valuePostings,
+      IntPredicate consumer) {
+    if (valuePostings.size() == 1) {
+      valuePostings.get(0).forEachWhile(consumer);
+      return;
+    }
+    // union of several values, ordinals must be passed in ascending order without duplicates
+    var union = new BitSet();
+    valuePostings.forEach(posting -> posting.addTo(union));
+    Postings.forEachWhile(union, consumer);
+  }
+
+  private static boolean matchesAll(List<List<Postings>> conditions, int ordinal) {
+    for (var condition : conditions) {
+      if (condition.stream().noneMatch(posting -> posting.contains(ordinal))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int size(List<Postings> valuePostings) {
+    return valuePostings.stream().mapToInt(Postings::size).sum();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.JpaUserSearch;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Builds {@link RealmAttributeIndex} of a realm. If users of the realm are stored in the database
+ * then ids and usernames of the users and values of the indexed attributes are read by two
+ * queries, otherwise all the users are read through the user providers by pages.
+ */
+class RealmAttributeIndexLoader {
+
+  private static final int PAGE_SIZE = 1000;
+
+  private RealmAttributeIndexLoader() {
+  }
+
+  static RealmAttributeIndex load(KeycloakSession session, RealmModel realm,
+      Collection<String> attributeNames, Collection<String> sortedAttributeNames) {
+    var index = new RealmAttributeIndex(attributeNames, sortedAttributeNames);
+    if (JpaUserSearch.isSupported(session, realm)) {
+      loadFromDatabase(session, realm, index);
+    } else {
+      loadFromProviders(session, realm, index);
+    }
+    index.seal();
+    return index;
+  }
+
+  /**
+   * @return {@code false} for service account users, they aren't searched
+   */
+  static boolean isIndexed(UserModel user) {
+    return Objects.isNull(user.getServiceAccountClientLink());
+  }
+
+  /**
+   * @return values of the indexed attributes of the user
+   */
+  static Map<String, List<String>> getIndexedAttributes(UserModel user,
+      Collection<String> attributeNames) {
+    return attributeNames.stream().collect(Collectors.toMap(name -> name,
+        name -> user.getAttributeStream(name).collect(Collectors.toList())));
+  }
+
+  /**
+   * Reads users by pages, so users of the whole realm are never requested from the providers at
+   * once.
+   */
+  private static void loadFromProviders(KeycloakSession session, RealmModel realm,
+      RealmAttributeIndex index) {
+    for (var first = 0; ; first += PAGE_SIZE) {
+      var page = session.users().getUsersStream(realm, first, PAGE_SIZE)
+          .collect(Collectors.toList());
+      page.stream()
+          .filter(RealmAttributeIndexLoader::isIndexed)
+          .forEach(user -> {
+            index.addUser(user.getId(), user.getUsername());
+            index.getAttributeNames().forEach(name -> user.getAttributeStream(name)
+                .forEach(value -> index.addValue(user.getId(), name, value)));
+          });
+      if (page.size() < PAGE_SIZE) {
+        return;
+      }
+    }
+  }
+
+  private static void loadFromDatabase(KeycloakSession session, RealmModel realm,
+      RealmAttributeIndex index) {
+    var em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    try (var users = em.createQuery("select u.id, u.username from UserEntity u"
+            + " where u.realmId = :realmId and u.serviceAccountClientLink is null"
+            + " order by u.username", Object[].class)
+        .setParameter("realmId", realm.getId())
+        .getResultStream()) {
+      users.forEach(row -> index.addUser((String) row[0], (String) row[1]));
+    }
+    try (var values = em.createQuery("select a.user.id, a.name, a.value"
+            + " from UserAttributeEntity a"
+            + " where a.user.realmId = :realmId and a.name in :names", Object[].class)
+        .setParameter("realmId", realm.getId())
+        .setParameter("names", index.getAttributeNames())
+        .getResultStream()) {
+      values.forEach(row -> index.addValue((String) row[0], (String) row[1], (String) row[2]));
+    }
+  }
+}
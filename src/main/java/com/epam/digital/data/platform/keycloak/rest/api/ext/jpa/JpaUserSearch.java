@@ -0,0 +1,351 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import static org.keycloak.models.jpa.PaginationUtils.paginateQuery;
+import static org.keycloak.utils.StreamsUtil.closing;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.MatchMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+import org.keycloak.models.jpa.JpaUserProvider;
+import org.keycloak.models.jpa.UserAdapter;
+import org.keycloak.models.jpa.entities.UserEntity;
+import org.keycloak.storage.UserStorageProvider;
+
+/**
+ * Translates attribute filters to JPQL over {@code USER_ENTITY} and {@code USER_ATTRIBUTE}, so the
+ * database returns only matching users instead of the whole realm.
+ * <p>
+ * Every attribute of {@code attributesEquals} becomes an {@code exists} sub-query with
+ * {@code VALUE IN (...)} and every attribute of {@code attributesStartsWith} becomes an
+ * {@code exists} sub-query with {@code VALUE LIKE 'prefix%'} predicates. Values of
+ * {@code attributesThatAreStartFor} are expected to be already expanded by
+ * {@link com.epam.digital.data.platform.keycloak.rest.api.ext.PrefixExpander}, so they become
+ * {@code exists} sub-queries with {@code VALUE IN (...)} as well. Users are ordered by
+ * username the same way as {@link UserProvider#getUsersStream(RealmModel, Integer, Integer)} does
+ * and service accounts are excluded the same way. Pages can be selected either by offset or by
+ * seeking after the last returned username, the latter uses the unique {@code (REALM_ID, USERNAME)}
+ * index and doesn't degrade on deep pages. Found users are loaded as read-only entities.
+ * <p>
+ * Results are read through a forward-only cursor of the query, so a search without limit is a
+ * single pass over the found users. With a fetch size the JDBC driver holds only that many rows
+ * at once.
+ * <p>
+ * Values of attributes with match modes aren't compared by the database: {@code lower} and
+ * {@code trim} of the database don't normalize values the same way as
+ * {@link com.epam.digital.data.platform.keycloak.rest.api.ext.ValueNormalizer} does, so a
+ * comparison in the database could miss matching users. Only presence of such an attribute is
+ * checked, the caller must check the found users against the filters of these attributes.
+ * <p>
+ * Applicable only for realms whose users are stored by the JPA provider, see
+ * {@link JpaUserSearch#isSupported(KeycloakSession, RealmModel)}.
+ */
+public class JpaUserSearch {
+
+  private static final char LIKE_ESCAPE = '!';
+  /**
+   * Found users are only read, so Hibernate doesn't keep snapshots of their state for dirty
+   * checking
+   */
+  private static final String READ_ONLY_HINT = "org.hibernate.readOnly";
+  private static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+
+  private final KeycloakSession session;
+  private final RealmModel realm;
+  private final EntityManager em;
+  private final Map<String, Set<MatchMode>> matchModes;
+  private final int fetchSize;
+
+  /**
+   * @param matchModes match modes of the attributes, only presence of the attributes with modes
+   *                   is checked, attributes without modes are compared exactly
+   * @param fetchSize  count of rows the JDBC driver fetches at once while the found users are
+   *                   read, if 0 then the driver default is used. Some drivers, e.g. PostgreSQL,
+   *                   read all the rows of the query into memory by default
+   */
+  public JpaUserSearch(KeycloakSession session, RealmModel realm,
+      Map<String, Set<MatchMode>> matchModes, int fetchSize) {
+    this.session = session;
+    this.realm = realm;
+    this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    this.matchModes = matchModes;
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Checks if users of the realm can be searched directly in the database. It's not possible if
+   * the local user storage isn't JPA or if the realm has any user federation providers (LDAP,
+   * Kerberos, custom user storage) as their users and attributes aren't stored in the database.
+   *
+   * @param session current Keycloak session
+   * @param realm   realm to search users in
+   * @return {@code true} if {@link JpaUserSearch} can be used for the realm
+   */
+  public static boolean isSupported(KeycloakSession session, RealmModel realm) {
+    return session.getProvider(UserProvider.class) instanceof JpaUserProvider
+        && realm.getComponentsStream(realm.getId(), UserStorageProvider.class.getName())
+        .findAny().isEmpty();
+  }
+
+  /**
+   * Searches users that match all the attribute maps.
+   *
+   * @param attributesEquals                  attributes that user must have with exact match
+   * @param attributesStartsWith              attributes that user must have with starts with
+   *                                          match
+   * @param expandedAttributesThatAreStartFor attributes that user must have with exact match to
+   *                                          any of the expanded prefixes
+   * @param afterUsername                     if not {@code null} only users with greater username
+   *                                          are returned (seek pagination)
+   * @param firstResult                       first result to return, ignored if negative
+   * @param maxResults                        maximum count of results to return, ignored if
+   *                                          negative
+   * @return stream of matched users ordered by username
+   */
+  public Stream<UserModel> getUsersStream(Map<String, List<String>> attributesEquals,
+      Map<String, List<String>> attributesStartsWith,
+      Map<String, List<String>> expandedAttributesThatAreStartFor, @Nullable String afterUsername,
+      int firstResult, int maxResults) {
+    var queryBuilder = filteredBy(attributesEquals, attributesStartsWith,
+        expandedAttributesThatAreStartFor);
+    if (afterUsername != null) {
+      queryBuilder.usernameAfter(afterUsername);
+    }
+
+    var query = queryBuilder.build();
+    return closing(paginateQuery(query, firstResult, maxResults).getResultStream())
+        .map(userEntity -> new UserAdapter(session, realm, em, userEntity));
+  }
+
+  /**
+   * Counts users that match all the attribute maps with a single {@code count} query.
+   *
+   * @param attributesEquals                  attributes that user must have with exact match
+   * @param attributesStartsWith              attributes that user must have with starts with
+   *                                          match
+   * @param expandedAttributesThatAreStartFor attributes that user must have with exact match to
+   *                                          any of the expanded prefixes
+   * @return count of matched users
+   */
+  public long countUsers(Map<String, List<String>> attributesEquals,
+      Map<String, List<String>> attributesStartsWith,
+      Map<String, List<String>> expandedAttributesThatAreStartFor) {
+    return filteredBy(attributesEquals, attributesStartsWith, expandedAttributesThatAreStartFor)
+        .buildCount().getSingleResult();
+  }
+
+  /**
+   * Counts the searched users of the realm, i.e. all but service accounts, up to and including
+   * the username with a single {@code count} query over the {@code (REALM_ID, USERNAME)} index.
+   *
+   * @param username username of the last counted user
+   * @return count of the users whose username isn't greater than the username
+   */
+  public long countUsersUpTo(String username) {
+    var queryBuilder = new UserQueryBuilder();
+    queryBuilder.usernameUpTo(username);
+    return queryBuilder.buildCount().getSingleResult();
+  }
+
+  /**
+   * Searches users that have every attribute with the value by a single query that joins
+   * {@code USER_ATTRIBUTE} once per attribute, so the database picks the most selective attribute
+   * to start from. Unlike the other searches service accounts aren't excluded, the same way as
+   * {@link UserProvider#searchForUserByUserAttributeStream(RealmModel, String, String)} doesn't
+   * exclude them.
+   *
+   * @param attributes attributes that user must have with exact match
+   * @return stream of matched users ordered by username
+   */
+  public Stream<UserModel> getUsersStreamByAttributeValues(Map<String, String> attributes) {
+    var joins = new StringBuilder("select distinct u from UserEntity u");
+    var where = new StringBuilder(" where u.realmId = :realmId");
+    var parameters = new HashMap<String, Object>(Map.of("realmId", realm.getId()));
+    var i = 0;
+    for (var attribute : new TreeMap<>(attributes).entrySet()) {
+      i++;
+      joins.append(" join u.attributes a").append(i);
+      where.append(" and a").append(i).append(".name = :n").append(i)
+          .append(" and a").append(i).append(".value = :v").append(i);
+      parameters.put("n" + i, attribute.getKey());
+      parameters.put("v" + i, attribute.getValue());
+    }
+
+    var query = em.createQuery(joins.append(where).append(" order by u.username").toString(),
+        UserEntity.class);
+    parameters.forEach(query::setParameter);
+    query.setHint(READ_ONLY_HINT, true);
+    if (fetchSize > 0) {
+      query.setHint(FETCH_SIZE_HINT, fetchSize);
+    }
+    return closing(query.getResultStream())
+        .map(userEntity -> new UserAdapter(session, realm, em, userEntity));
+  }
+
+  /**
+   * Reads users of the realm by ids with {@code IN} queries of at most {@code batchSize} ids
+   * instead of reading every user by a separate query.
+   *
+   * @param userIds   ids of the users
+   * @param batchSize max count of ids of a single query
+   * @return found users in the order of the ids, ids of missing users are skipped
+   */
+  public List<UserModel> getUsersByIds(List<String> userIds, int batchSize) {
+    var usersById = new HashMap<String, UserEntity>();
+    for (var from = 0; from < userIds.size(); from += batchSize) {
+      var query = em.createQuery("select u from UserEntity u"
+              + " where u.realmId = :realmId and u.id in :userIds", UserEntity.class)
+          .setParameter("realmId", realm.getId())
+          .setParameter("userIds", userIds.subList(from, Math.min(from + batchSize,
+              userIds.size())))
+          .setHint(READ_ONLY_HINT, true);
+      query.getResultList().forEach(userEntity -> usersById.put(userEntity.getId(), userEntity));
+    }
+    return userIds.stream()
+        .map(usersById::get)
+        .filter(Objects::nonNull)
+        .map(userEntity -> (UserModel) new UserAdapter(session, realm, em, userEntity))
+        .collect(Collectors.toList());
+  }
+
+  private UserQueryBuilder filteredBy(Map<String, List<String>> attributesEquals,
+      Map<String, List<String>> attributesStartsWith,
+      Map<String, List<String>> expandedAttributesThatAreStartFor) {
+    var queryBuilder = new UserQueryBuilder();
+    attributesEquals.forEach(queryBuilder::attributeIn);
+    attributesStartsWith.forEach(queryBuilder::attributeStartsWith);
+    expandedAttributesThatAreStartFor.forEach(queryBuilder::attributeIn);
+    return queryBuilder;
+  }
+
+  static String escapeLike(String value) {
+    var escaped = new StringBuilder(value.length() + 8);
+    for (var i = 0; i < value.length(); i++) {
+      var c = value.charAt(i);
+      if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+        escaped.append(LIKE_ESCAPE);
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
+  }
+
+  private static boolean isListEmpty(List<String> list) {
+    return Objects.isNull(list) || list.isEmpty();
+  }
+
+  private class UserQueryBuilder {
+
+    private final StringBuilder where = new StringBuilder(
+        "where u.realmId = :realmId and u.serviceAccountClientLink is null");
+    private final Map<String, Object> parameters = new HashMap<>(Map.of("realmId", realm.getId()));
+
+    void attributeIn(String name, List<String> values) {
+      if (isListEmpty(values)) {
+        return;
+      }
+      if (matchModes.containsKey(name)) {
+        attributePresent(name);
+        return;
+      }
+      var nameParam = parameter(name);
+      where.append(" and exists (select a.id from UserAttributeEntity a where a.user = u")
+          .append(" and a.name = :").append(nameParam)
+          .append(" and a.value in :").append(parameter(values))
+          .append(')');
+    }
+
+    void usernameAfter(String username) {
+      where.append(" and u.username > :").append(parameter(username));
+    }
+
+    void usernameUpTo(String username) {
+      where.append(" and u.username <= :").append(parameter(username));
+    }
+
+    void attributeStartsWith(String name, List<String> prefixes) {
+      if (isListEmpty(prefixes)) {
+        return;
+      }
+      if (matchModes.containsKey(name)) {
+        attributePresent(name);
+        return;
+      }
+      var nameParam = parameter(name);
+      where.append(" and exists (select a.id from UserAttributeEntity a where a.user = u")
+          .append(" and a.name = :").append(nameParam)
+          .append(" and (");
+      for (var i = 0; i < prefixes.size(); i++) {
+        if (i > 0) {
+          where.append(" or ");
+        }
+        where.append("a.value like :")
+            .append(parameter(escapeLike(prefixes.get(i)) + '%'))
+            .append(" escape '").append(LIKE_ESCAPE).append('\'');
+      }
+      where.append("))");
+    }
+
+    /**
+     * Matches users that have the attribute with any value, the values are compared by the
+     * caller.
+     */
+    void attributePresent(String name) {
+      where.append(" and exists (select a.id from UserAttributeEntity a where a.user = u")
+          .append(" and a.name = :").append(parameter(name))
+          .append(')');
+    }
+
+    TypedQuery<UserEntity> build() {
+      var query = em.createQuery("select u from UserEntity u " + where + " order by u.username",
+          UserEntity.class);
+      parameters.forEach(query::setParameter);
+      query.setHint(READ_ONLY_HINT, true);
+      if (fetchSize > 0) {
+        query.setHint(FETCH_SIZE_HINT, fetchSize);
+      }
+      return query;
+    }
+
+    TypedQuery<Long> buildCount() {
+      var query = em.createQuery("select count(u) from UserEntity u " + where, Long.class);
+      parameters.forEach(query::setParameter);
+      return query;
+    }
+
+    private String parameter(Object value) {
+      var name = "p" + parameters.size();
+      parameters.put(name, value);
+      return name;
+    }
+  }
+}
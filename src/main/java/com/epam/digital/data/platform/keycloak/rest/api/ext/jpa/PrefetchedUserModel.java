@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.UserModelDelegate;
+
+/**
+ * User model that serves attributes loaded by {@link UserAttributeBatchLoader} from memory. Reads
+ * of attributes that weren't loaded and of the built-in attributes (username, email, first and
+ * last name) are passed to the delegate.
+ */
+public class PrefetchedUserModel extends UserModelDelegate {
+
+  private static final Set<String> BUILT_IN_ATTRIBUTES = Set.of(UserModel.USERNAME,
+      UserModel.EMAIL, UserModel.FIRST_NAME, UserModel.LAST_NAME);
+
+  private final Map<String, List<String>> attributes;
+  private final Set<String> loadedAttributeNames;
+
+  /**
+   * @param loadedAttributeNames names of the loaded attributes or {@code null} if all the
+   *                             attributes were loaded
+   */
+  public PrefetchedUserModel(UserModel delegate, Map<String, List<String>> attributes,
+      @Nullable Set<String> loadedAttributeNames) {
+    super(delegate);
+    this.attributes = attributes;
+    this.loadedAttributeNames = loadedAttributeNames;
+  }
+
+  @Override
+  public Stream<String> getAttributeStream(String name) {
+    if (!isLoaded(name)) {
+      return super.getAttributeStream(name);
+    }
+    return attributes.getOrDefault(name, List.of()).stream();
+  }
+
+  @Override
+  public String getFirstAttribute(String name) {
+    if (!isLoaded(name)) {
+      return super.getFirstAttribute(name);
+    }
+    var values = attributes.getOrDefault(name, List.of());
+    return values.isEmpty() ? null : values.get(0);
+  }
+
+  @Override
+  public Map<String, List<String>> getAttributes() {
+    if (loadedAttributeNames != null) {
+      return super.getAttributes();
+    }
+    var allAttributes = new HashMap<>(attributes);
+    allAttributes.put(UserModel.USERNAME, List.of(getUsername()));
+    allAttributes.put(UserModel.EMAIL, nullableList(getEmail()));
+    allAttributes.put(UserModel.FIRST_NAME, nullableList(getFirstName()));
+    allAttributes.put(UserModel.LAST_NAME, nullableList(getLastName()));
+    return allAttributes;
+  }
+
+  private boolean isLoaded(String name) {
+    return !BUILT_IN_ATTRIBUTES.contains(name)
+        && (loadedAttributeNames == null || loadedAttributeNames.contains(name));
+  }
+
+  private static List<String> nullableList(@Nullable String value) {
+    return value == null ? List.of() : List.of(value);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+import org.keycloak.models.jpa.JpaUserProvider;
+import org.keycloak.storage.StorageId;
+
+/**
+ * Loads attributes of a batch of users with a single query
+ * {@code WHERE USER_ID IN (...) AND NAME IN (...)} instead of lazy loading attributes of every
+ * user one by one.
+ * <p>
+ * Users in the stream are grouped into batches and replaced with {@link PrefetchedUserModel} that
+ * serves the loaded attributes from memory. Only users that are stored in the database without
+ * federation link are prefetched, attributes of the other users may be provided by federation
+ * mappers and are read from the user model as usual.
+ */
+public class UserAttributeBatchLoader {
+
+  public static final int DEFAULT_BATCH_SIZE = 500;
+
+  private final EntityManager em;
+  private final Set<String> attributeNames;
+  private final int batchSize;
+
+  /**
+   * @param attributeNames names of the attributes to load or {@code null} to load all the
+   *                       attributes
+   */
+  public UserAttributeBatchLoader(KeycloakSession session, @Nullable Set<String> attributeNames,
+      int batchSize) {
+    this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    this.attributeNames = attributeNames;
+    this.batchSize = batchSize;
+  }
+
+  public static boolean isSupported(KeycloakSession session) {
+    return session.getProvider(UserProvider.class) instanceof JpaUserProvider;
+  }
+
+  public Stream<UserModel> prefetch(Stream<UserModel> users) {
+    var iterator = users.iterator();
+    return Stream.generate(() -> nextBatch(iterator))
+        .takeWhile(batch -> !batch.isEmpty())
+        .flatMap(batch -> prefetchBatch(batch).stream())
+        .onClose(users::close);
+  }
+
+  /**
+   * @param userIds ids of the users
+   * @return map of user ids to the map of loaded attributes of the user
+   */
+  public Map<String, Map<String, List<String>>> load(Collection<String> userIds) {
+    var attributes = new HashMap<String, Map<String, List<String>>>();
+    if (userIds.isEmpty() || (attributeNames != null && attributeNames.isEmpty())) {
+      return attributes;
+    }
+    var query = em.createQuery("select a.user.id, a.name, a.value from UserAttributeEntity a"
+            + " where a.user.id in :userIds"
+            + (attributeNames == null ? "" : " and a.name in :names"), Object[].class)
+        .setParameter("userIds", userIds);
+    if (attributeNames != null) {
+      query.setParameter("names", attributeNames);
+    }
+    query.getResultList().forEach(row -> attributes
+        .computeIfAbsent((String) row[0], id -> new HashMap<>())
+        .computeIfAbsent((String) row[1], name -> new ArrayList<>())
+        .add((String) row[2]));
+    return attributes;
+  }
+
+  private List<UserModel> nextBatch(Iterator<UserModel> iterator) {
+    var batch = new ArrayList<UserModel>(batchSize);
+    while (batch.size() < batchSize && iterator.hasNext()) {
+      batch.add(iterator.next());
+    }
+    return batch;
+  }
+
+  private List<UserModel> prefetchBatch(List<UserModel> batch) {
+    var userIds = batch.stream()
+        .filter(UserAttributeBatchLoader::isStoredInDatabase)
+        .map(UserModel::getId)
+        .collect(Collectors.toList());
+    var attributes = load(userIds);
+    return batch.stream()
+        .map(userModel -> isStoredInDatabase(userModel)
+            ? new PrefetchedUserModel(userModel,
+            attributes.getOrDefault(userModel.getId(), Map.of()), attributeNames)
+            : userModel)
+        .collect(Collectors.toList());
+  }
+
+  private static boolean isStoredInDatabase(UserModel userModel) {
+    return StorageId.isLocalStorage(userModel.getId())
+        && Objects.isNull(userModel.getFederationLink());
+  }
+}
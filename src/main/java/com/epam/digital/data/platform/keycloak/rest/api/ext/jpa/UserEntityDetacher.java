@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import java.util.Collection;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.jpa.entities.UserEntity;
+import org.keycloak.storage.StorageId;
+
+/**
+ * Detaches entities of the scanned users and their loaded attributes from the persistence context
+ * of the session. Entities read by a search stay managed until the session is closed, so without
+ * detaching the memory used by a long scan grows with every scanned user instead of being bounded
+ * by a page.
+ * <p>
+ * Entities are looked up by {@link EntityManager#getReference(Class, Object)} that returns the
+ * managed entity if it's loaded and never queries the database. Users that are only kept in the
+ * user cache don't have managed entities, so nothing is detached for them.
+ */
+public class UserEntityDetacher {
+
+  private static final String ATTRIBUTES = "attributes";
+
+  private final EntityManager em;
+  private final PersistenceUnitUtil persistenceUnitUtil;
+
+  public UserEntityDetacher(KeycloakSession session) {
+    this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    this.persistenceUnitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+  }
+
+  /**
+   * @param userIds ids of the users, users that aren't stored in the database are skipped
+   */
+  public void detach(Collection<String> userIds) {
+    userIds.stream()
+        .filter(StorageId::isLocalStorage)
+        .forEach(this::detach);
+  }
+
+  private void detach(String userId) {
+    var userEntity = em.getReference(UserEntity.class, userId);
+    if (persistenceUnitUtil.isLoaded(userEntity, ATTRIBUTES)) {
+      userEntity.getAttributes().forEach(em::detach);
+    }
+    em.detach(userEntity);
+  }
+}
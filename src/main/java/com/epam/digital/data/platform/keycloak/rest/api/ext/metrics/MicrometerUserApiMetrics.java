@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserApiMetrics} published to a Micrometer registry. Meters of all the endpoints are
+ * registered when the metrics are created, every meter is tagged with the endpoint path:
+ * <ul>
+ *   <li>{@code keycloak.users.search} - duration of the search</li>
+ *   <li>{@code keycloak.users.search.scanned} - count of candidate users read per search</li>
+ *   <li>{@code keycloak.users.search.matched} - count of users that matched the filters per
+ *   search, compared with the scanned count it shows which filters need an index</li>
+ *   <li>{@code keycloak.users.search.iterations} - count of pages requested from the user source
+ *   per search</li>
+ *   <li>{@code keycloak.users.search.page.size} - requested page size</li>
+ *   <li>{@code keycloak.users.search.mapping} - time spent on building user representations per
+ *   search</li>
+ * </ul>
+ */
+public class MicrometerUserApiMetrics implements UserApiMetrics {
+
+  private final Map<Endpoint, EndpointMeters> meters = new EnumMap<>(Endpoint.class);
+
+  public MicrometerUserApiMetrics(MeterRegistry registry) {
+    for (var endpoint : Endpoint.values()) {
+      meters.put(endpoint, new EndpointMeters(registry, endpoint.getPath()));
+    }
+  }
+
+  public static UserApiMetrics globalRegistry() {
+    return new MicrometerUserApiMetrics(Metrics.globalRegistry);
+  }
+
+  @Override
+  public SearchRecorder start(Endpoint endpoint) {
+    return new MicrometerSearchRecorder(meters.get(endpoint));
+  }
+
+  private static class EndpointMeters {
+
+    private final Timer duration;
+    private final DistributionSummary scanned;
+    private final DistributionSummary matched;
+    private final DistributionSummary iterations;
+    private final DistributionSummary pageSize;
+    private final Timer mapping;
+
+    private EndpointMeters(MeterRegistry registry, String endpoint) {
+      duration = Timer.builder("keycloak.users.search")
+          .description("Duration of the users search")
+          .tag("endpoint", endpoint)
+          .publishPercentileHistogram()
+          .register(registry);
+      scanned = summary(registry, "keycloak.users.search.scanned",
+          "Count of candidate users read per search", endpoint);
+      matched = summary(registry, "keycloak.users.search.matched",
+          "Count of users that matched the filters per search", endpoint);
+      iterations = summary(registry, "keycloak.users.search.iterations",
+          "Count of pages requested from the user source per search", endpoint);
+      pageSize = summary(registry, "keycloak.users.search.page.size",
+          "Requested page size", endpoint);
+      mapping = Timer.builder("keycloak.users.search.mapping")
+          .description("Time spent on building user representations per search")
+          .tag("endpoint", endpoint)
+          .register(registry);
+    }
+
+    private static DistributionSummary summary(MeterRegistry registry, String name,
+        String description, String endpoint) {
+      return DistributionSummary.builder(name)
+          .description(description)
+          .tag("endpoint", endpoint)
+          .register(registry);
+    }
+  }
+
+  private static class MicrometerSearchRecorder implements SearchRecorder {
+
+    private final EndpointMeters meters;
+    private final long start = System.nanoTime();
+    private long scanned;
+    private long matched;
+    private long iterations;
+    private long mappingNanos;
+    private int pageSize;
+    private boolean stopped;
+
+    private MicrometerSearchRecorder(EndpointMeters meters) {
+      this.meters = meters;
+    }
+
+    @Override
+    public void scanned() {
+      scanned++;
+    }
+
+    @Override
+    public void matched() {
+      matched++;
+    }
+
+    @Override
+    public void iteration() {
+      iterations++;
+    }
+
+    @Override
+    public void pageSize(int pageSize) {
+      this.pageSize = pageSize;
+    }
+
+    @Override
+    public void mapping(long nanos) {
+      mappingNanos += nanos;
+    }
+
+    @Override
+    public void stop() {
+      if (stopped) {
+        return;
+      }
+      stopped = true;
+      meters.duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      meters.mapping.record(mappingNanos, TimeUnit.NANOSECONDS);
+      meters.matched.record(matched);
+      if (scanned > 0) {
+        meters.scanned.record(scanned);
+      }
+      if (iterations > 0) {
+        meters.iterations.record(iterations);
+      }
+      if (pageSize > 0) {
+        meters.pageSize.record(pageSize);
+      }
+    }
+  }
+}
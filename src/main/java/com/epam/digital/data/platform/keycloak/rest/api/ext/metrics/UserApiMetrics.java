@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.metrics;
+
+import java.util.function.Function;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Metrics of the users search endpoints. Every search is recorded by a {@link SearchRecorder}
+ * started when the request comes in and stopped when the response is built or, for streaming
+ * endpoints, when the stream is closed.
+ * <p>
+ * Metrics are published to the Micrometer global registry that Keycloak exposes on its metrics
+ * endpoint. If Micrometer isn't available, e.g. on the WildFly distribution, nothing is recorded.
+ */
+public interface UserApiMetrics {
+
+  UserApiMetrics NOOP = endpoint -> SearchRecorder.NOOP;
+
+  SearchRecorder start(Endpoint endpoint);
+
+  /**
+   * @return metrics published to the Micrometer global registry or {@link #NOOP} if Micrometer
+   * isn't on the classpath
+   */
+  static UserApiMetrics create() {
+    try {
+      Class.forName("io.micrometer.core.instrument.Metrics", false,
+          UserApiMetrics.class.getClassLoader());
+    } catch (ClassNotFoundException | LinkageError e) {
+      return NOOP;
+    }
+    return MicrometerUserApiMetrics.globalRegistry();
+  }
+
+  @Getter
+  @RequiredArgsConstructor
+  enum Endpoint {
+    SEARCH("search"),
+    SEARCH_STREAM("search/stream"),
+    SEARCH_BY_ATTRIBUTES("search-by-attributes"),
+    SEARCH_BY_ATTRIBUTES_STREAM("search-by-attributes/stream"),
+    V2_SEARCH_BY_ATTRIBUTES("v2/search-by-attributes"),
+    V2_SEARCH_BY_ATTRIBUTES_STREAM("v2/search-by-attributes/stream"),
+    V2_SEARCH_BY_ATTRIBUTES_BATCH("v2/search-by-attributes/batch"),
+    V2_SEARCH_USER_CHANGES("v2/search-by-attributes/changes"),
+    V2_COUNT_BY_ATTRIBUTES("v2/count-by-attributes");
+
+    private final String path;
+  }
+
+  /**
+   * Records a single search. Not thread safe, a search is processed by a single thread.
+   */
+  interface SearchRecorder {
+
+    SearchRecorder NOOP = new SearchRecorder() {
+    };
+
+    /**
+     * A candidate user was read from the user source.
+     */
+    default void scanned() {
+    }
+
+    /**
+     * A candidate user matched the filters.
+     */
+    default void matched() {
+    }
+
+    /**
+     * A new page of candidate users was requested from the user source.
+     */
+    default void iteration() {
+    }
+
+    default void pageSize(int pageSize) {
+    }
+
+    default void mapping(long nanos) {
+    }
+
+    /**
+     * Records duration of the search and the collected counts.
+     */
+    default void stop() {
+    }
+
+    default <T, R> Function<T, R> timeMapping(Function<T, R> mapper) {
+      if (this == NOOP) {
+        return mapper;
+      }
+      return value -> {
+        var start = System.nanoTime();
+        try {
+          return mapper.apply(value);
+        } finally {
+          mapping(System.nanoTime() - start);
+        }
+      };
+    }
+
+    default <T> Stream<T> countMatched(Stream<T> stream) {
+      return this == NOOP ? stream : stream.peek(value -> matched());
+    }
+  }
+}
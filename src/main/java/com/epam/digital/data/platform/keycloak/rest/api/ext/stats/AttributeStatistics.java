@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.stats;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.jboss.logging.Logger;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.timer.TimerProvider;
+
+/**
+ * Statistics of the user attributes, one {@link RealmAttributeStats} per realm. Statistics of a
+ * realm are computed in background on the first request in the realm and recomputed with the
+ * configured interval; until they're computed they aren't available.
+ * <p>
+ * Statistics are only estimates used to order the search filters and to decide which attributes
+ * deserve database indexes, so they aren't updated on every user change. Every cluster node
+ * computes its own statistics.
+ */
+public class AttributeStatistics {
+
+  private static final Logger LOG = Logger.getLogger(AttributeStatistics.class);
+  private static final String REFRESH_TASK_NAME = "users-attribute-stats-refresh";
+
+  private final long refreshIntervalMillis;
+  private final int topValues;
+  private final ConcurrentMap<String, RealmAttributeStats> realmStats = new ConcurrentHashMap<>();
+  private final Set<String> computing = ConcurrentHashMap.newKeySet();
+
+  private KeycloakSessionFactory sessionFactory;
+  private ExecutorService executor;
+
+  /**
+   * @param refreshIntervalMillis interval of the statistics recomputation, if 0 then statistics
+   *                              are disabled
+   * @param topValues             count of the most common values kept per attribute
+   */
+  public AttributeStatistics(long refreshIntervalMillis, int topValues) {
+    this.refreshIntervalMillis = refreshIntervalMillis;
+    this.topValues = topValues;
+  }
+
+  public static AttributeStatistics disabled() {
+    return new AttributeStatistics(0, 0);
+  }
+
+  public boolean isEnabled() {
+    return refreshIntervalMillis > 0;
+  }
+
+  /**
+   * Subscribes to Keycloak events and schedules the periodic recomputation.
+   */
+  public void start(KeycloakSessionFactory sessionFactory) {
+    if (!isEnabled()) {
+      return;
+    }
+    this.sessionFactory = sessionFactory;
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      var thread = new Thread(runnable, "users-attribute-stats");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sessionFactory.register(this::onProviderEvent);
+    KeycloakModelUtils.runJobInTransaction(sessionFactory,
+        session -> session.getProvider(TimerProvider.class).scheduleTask(
+            taskSession -> realmStats.keySet().forEach(this::scheduleComputation),
+            refreshIntervalMillis, REFRESH_TASK_NAME));
+  }
+
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return statistics of the realm or {@code null} if statistics are disabled or not computed
+   * yet, in the latter case the computation is started
+   */
+  @Nullable
+  public RealmAttributeStats get(RealmModel realm) {
+    if (!isEnabled() || sessionFactory == null) {
+      return null;
+    }
+    var stats = realmStats.get(realm.getId());
+    if (stats == null) {
+      scheduleComputation(realm.getId());
+    }
+    return stats;
+  }
+
+  private void onProviderEvent(ProviderEvent event) {
+    if (event instanceof RealmModel.RealmRemovedEvent) {
+      realmStats.remove(((RealmModel.RealmRemovedEvent) event).getRealm().getId());
+    }
+  }
+
+  private void scheduleComputation(String realmId) {
+    if (!computing.add(realmId)) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        var start = System.nanoTime();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+          var realm = session.realms().getRealm(realmId);
+          if (realm == null) {
+            realmStats.remove(realmId);
+            return;
+          }
+          var stats = RealmAttributeStatsLoader.load(session, realm, topValues,
+              System.currentTimeMillis());
+          realmStats.put(realmId, stats);
+          LOG.debugf("Attribute statistics of realm %s with %d users computed in %d ms",
+              realm.getName(), stats.getUserCount(),
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        });
+      } catch (RuntimeException e) {
+        LOG.warnf(e, "Failed to compute attribute statistics of realm %s", realmId);
+      } finally {
+        computing.remove(realmId);
+      }
+    });
+  }
+}
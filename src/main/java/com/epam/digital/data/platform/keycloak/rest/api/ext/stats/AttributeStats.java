@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.stats;
+
+import java.util.Map;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Statistics of an attribute of the realm users.
+ */
+@Getter
+@RequiredArgsConstructor
+public class AttributeStats {
+
+  /**
+   * Count of users that have any value of the attribute
+   */
+  private final long userCount;
+  /**
+   * Count of distinct values of the attribute
+   */
+  private final long distinctValues;
+  /**
+   * The most common values with count of users that have them, from the most common one
+   */
+  private final Map<String, Long> topValues;
+
+  /**
+   * @return count of users that have the value if it's one of the top values, otherwise the
+   * average count of users per value of the rest of the values
+   */
+  public long estimateUsers(String value) {
+    var count = topValues.get(value);
+    if (count != null) {
+      return count;
+    }
+    var otherValues = distinctValues - topValues.size();
+    if (otherValues <= 0) {
+      return 0;
+    }
+    var otherUsers = userCount - topValues.values().stream().mapToLong(Long::longValue).sum();
+    // users may have several values, so the rest of the users is only an estimate
+    return Math.max(1, otherUsers / otherValues);
+  }
+}
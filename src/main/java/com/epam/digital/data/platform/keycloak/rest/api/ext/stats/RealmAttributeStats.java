@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.stats;
+
+import java.util.Collection;
+import java.util.Map;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Statistics of the attributes of the realm users computed at the moment, service accounts aren't
+ * counted.
+ */
+@Getter
+@RequiredArgsConstructor
+public class RealmAttributeStats {
+
+  /**
+   * Count of all the users of the realm
+   */
+  private final long userCount;
+  /**
+   * Statistics of the attributes by attribute name, attributes that no user has are absent
+   */
+  private final Map<String, AttributeStats> attributes;
+  /**
+   * Time the statistics were computed at in milliseconds since the epoch
+   */
+  private final long computedAt;
+
+  /**
+   * @return estimated count of users that have any of the values of the attribute, never more than
+   * count of the users that have the attribute
+   */
+  public long estimateUsers(String attributeName, Collection<String> values) {
+    var stats = attributes.get(attributeName);
+    if (stats == null) {
+      return 0;
+    }
+    var estimate = values.stream().distinct().mapToLong(stats::estimateUsers).sum();
+    return Math.min(estimate, stats.getUserCount());
+  }
+
+  /**
+   * @return count of users that have any value of the attribute
+   */
+  public long estimateUsers(String attributeName) {
+    var stats = attributes.get(attributeName);
+    return stats == null ? 0 : stats.getUserCount();
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.stats;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.JpaUserSearch;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Computes {@link RealmAttributeStats} of a realm. If users of the realm are stored in the
+ * database then the statistics are computed by aggregate queries, one for all the attributes and
+ * one per attribute for its top values. Otherwise, all the users are read through the user
+ * providers by pages and values are counted in memory.
+ */
+class RealmAttributeStatsLoader {
+
+  private static final Set<String> BUILT_IN_ATTRIBUTES = Set.of(UserModel.USERNAME,
+      UserModel.EMAIL, UserModel.FIRST_NAME, UserModel.LAST_NAME);
+  private static final String REALM_USERS = " where a.user.realmId = :realmId"
+      + " and a.user.serviceAccountClientLink is null";
+  private static final int PAGE_SIZE = 1000;
+
+  private RealmAttributeStatsLoader() {
+  }
+
+  /**
+   * @param topValues count of the most common values kept per attribute
+   */
+  static RealmAttributeStats load(KeycloakSession session, RealmModel realm, int topValues,
+      long computedAt) {
+    if (JpaUserSearch.isSupported(session, realm)) {
+      return loadFromDatabase(session, realm, topValues, computedAt);
+    }
+    var userCount = new long[1];
+    var usersByAttribute = new HashMap<String, Long>();
+    var usersByValue = new HashMap<String, Map<String, Long>>();
+    for (var first = 0; ; first += PAGE_SIZE) {
+      var page = session.users().getUsersStream(realm, first, PAGE_SIZE)
+          .collect(Collectors.toList());
+      page.stream()
+          .filter(user -> Objects.isNull(user.getServiceAccountClientLink()))
+          .forEach(user -> {
+            userCount[0]++;
+            user.getAttributes().forEach((name, values) -> {
+              if (BUILT_IN_ATTRIBUTES.contains(name) || values.isEmpty()) {
+                return;
+              }
+              usersByAttribute.merge(name, 1L, Long::sum);
+              var valueCounts = usersByValue.computeIfAbsent(name, key -> new HashMap<>());
+              values.stream().distinct()
+                  .forEach(value -> valueCounts.merge(value, 1L, Long::sum));
+            });
+          });
+      if (page.size() < PAGE_SIZE) {
+        break;
+      }
+    }
+
+    var attributes = new HashMap<String, AttributeStats>();
+    usersByAttribute.forEach((name, users) -> {
+      var valueCounts = usersByValue.get(name);
+      var top = new LinkedHashMap<String, Long>();
+      valueCounts.entrySet().stream()
+          .sorted(Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+              .thenComparing(Entry.comparingByKey()))
+          .limit(topValues)
+          .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+      attributes.put(name, new AttributeStats(users, valueCounts.size(), top));
+    });
+    return new RealmAttributeStats(userCount[0], attributes, computedAt);
+  }
+
+  private static RealmAttributeStats loadFromDatabase(KeycloakSession session, RealmModel realm,
+      int topValues, long computedAt) {
+    var em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    var userCount = em.createQuery("select count(u) from UserEntity u"
+            + " where u.realmId = :realmId and u.serviceAccountClientLink is null", Long.class)
+        .setParameter("realmId", realm.getId())
+        .getSingleResult();
+
+    var attributes = new HashMap<String, AttributeStats>();
+    em.createQuery("select a.name, count(distinct a.value), count(distinct a.user.id)"
+            + " from UserAttributeEntity a" + REALM_USERS
+            + " group by a.name", Object[].class)
+        .setParameter("realmId", realm.getId())
+        .getResultList()
+        .forEach(row -> {
+          var name = (String) row[0];
+          attributes.put(name, new AttributeStats((Long) row[2], (Long) row[1],
+              getTopValues(em, realm, name, topValues)));
+        });
+    return new RealmAttributeStats(userCount, attributes, computedAt);
+  }
+
+  private static Map<String, Long> getTopValues(EntityManager em, RealmModel realm, String name,
+      int topValues) {
+    var top = new LinkedHashMap<String, Long>();
+    if (topValues <= 0) {
+      return top;
+    }
+    em.createQuery("select a.value, count(distinct a.user.id) from UserAttributeEntity a"
+            + REALM_USERS + " and a.name = :name"
+            + " group by a.value order by count(distinct a.user.id) desc, a.value", Object[].class)
+        .setParameter("realmId", realm.getId())
+        .setParameter("name", name)
+        .setMaxResults(topValues)
+        .getResultList()
+        .forEach(row -> top.put((String) row[0], (Long) row[1]));
+    return top;
+  }
+}
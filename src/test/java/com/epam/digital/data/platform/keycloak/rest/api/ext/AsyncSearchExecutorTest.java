@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.mockito.ArgumentCaptor;
+
+class AsyncSearchExecutorTest {
+
+  private AsyncSearchExecutor executor;
+
+  @BeforeEach
+  void setUp() {
+    var sessionFactory = mock(KeycloakSessionFactory.class);
+    when(sessionFactory.create()).thenAnswer(
+        invocation -> mock(KeycloakSession.class, RETURNS_DEEP_STUBS));
+    executor = new AsyncSearchExecutor(1, 0, 30);
+    executor.start(sessionFactory);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.close();
+  }
+
+  @Test
+  void shouldResumeResponseWithSearchResult() {
+    var response = mock(AsyncResponse.class);
+
+    executor.submit(response, session -> "result");
+
+    verify(response, timeout(1000)).resume("result");
+  }
+
+  @Test
+  void shouldResumeResponseWithSearchError() {
+    var response = mock(AsyncResponse.class);
+    var error = new IllegalStateException("failed");
+
+    executor.submit(response, session -> {
+      throw error;
+    });
+
+    verify(response, timeout(1000)).resume(error);
+  }
+
+  @Test
+  void shouldRejectSearchIfAllThreadsAreBusy() throws InterruptedException {
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var runningResponse = mock(AsyncResponse.class);
+    var rejectedResponse = mock(AsyncResponse.class);
+
+    executor.submit(runningResponse, session -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return "result";
+    });
+    started.await();
+    executor.submit(rejectedResponse, session -> "rejected");
+    release.countDown();
+
+    verify(rejectedResponse).resume(any(ServiceUnavailableException.class));
+    verify(runningResponse, timeout(1000)).resume("result");
+  }
+
+  @Test
+  void shouldResumeTimedOutResponseWithServiceUnavailable() throws InterruptedException {
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var runningResponse = mock(AsyncResponse.class);
+    var timedOutResponse = mock(AsyncResponse.class);
+    var timeoutHandler = ArgumentCaptor.forClass(TimeoutHandler.class);
+
+    executor.close();
+    executor = new AsyncSearchExecutor(1, 1, 30);
+    executor.start(mock(KeycloakSessionFactory.class, RETURNS_DEEP_STUBS));
+    executor.submit(runningResponse, session -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return "result";
+    });
+    started.await();
+    executor.submit(timedOutResponse, session -> "timed out");
+
+    verify(timedOutResponse).setTimeout(30, TimeUnit.SECONDS);
+    verify(timedOutResponse).setTimeoutHandler(timeoutHandler.capture());
+    timeoutHandler.getValue().handleTimeout(timedOutResponse);
+    when(timedOutResponse.isDone()).thenReturn(true);
+    release.countDown();
+
+    verify(timedOutResponse).resume(any(ServiceUnavailableException.class));
+    verify(runningResponse, timeout(1000)).resume("result");
+    verify(timedOutResponse, never()).resume("timed out");
+  }
+}
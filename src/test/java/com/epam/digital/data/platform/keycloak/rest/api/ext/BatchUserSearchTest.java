@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.Projection;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.H2Database;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.SearchRecorder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.ws.rs.BadRequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.representations.idm.UserRepresentation;
+
+class BatchUserSearchTest {
+
+  private H2Database database;
+  private EntityManager em;
+  private RealmModel realm;
+  private KeycloakSession session;
+
+  @BeforeEach
+  void setUp() {
+    database = new H2Database();
+    em = database.createEntityManager();
+    em.getTransaction().begin();
+    realm = mock(RealmModel.class);
+    when(realm.getId()).thenReturn("realm");
+    session = H2Database.mockSession(em, realm);
+  }
+
+  @AfterEach
+  void tearDown() {
+    em.getTransaction().rollback();
+    em.close();
+    database.close();
+  }
+
+  @Test
+  void shouldSearchDatabaseWithContinueTokensOfSingleSearch() {
+    database.addUsers("realm", List.of("user01", "user03", "user05"), "code", "odd");
+    database.addUsers("realm", List.of("user02", "user04", "user06"), "code", "even");
+    var batchSearch = new BatchUserSearch(session, realm, UserApiDependencies.defaults());
+
+    var first = batchSearch.search(Map.of("even", request(null)), SearchRecorder.NOOP)
+        .get("even");
+    var next = batchSearch.search(Map.of("even", request(first.getPagination().getCursor())),
+        SearchRecorder.NOOP).get("even");
+
+    assertEquals(List.of("user02", "user04"), getUsernames(first));
+    // continue token counts all the users of the realm before the next page
+    assertEquals(4, first.getPagination().getContinueToken());
+    assertEquals(List.of("user06"), getUsernames(next));
+    assertEquals(-1, next.getPagination().getContinueToken());
+  }
+
+  @Test
+  void shouldNotCountContinueTokensOfSearchesPaginatedByCursor() {
+    database.addUsers("realm", List.of("user02", "user04", "user06", "user08", "user10"),
+        "code", "even");
+    var batchSearch = new BatchUserSearch(session, realm, UserApiDependencies.defaults());
+
+    var first = batchSearch.search(Map.of("even", request(null)), SearchRecorder.NOOP)
+        .get("even");
+    var next = batchSearch.search(Map.of("even", request(first.getPagination().getCursor())),
+        SearchRecorder.NOOP).get("even");
+    var last = batchSearch.search(Map.of("even", request(next.getPagination().getCursor())),
+        SearchRecorder.NOOP).get("even");
+
+    assertEquals(List.of("user06", "user08"), getUsernames(next));
+    assertNull(next.getPagination().getContinueToken());
+    assertEquals(List.of("user10"), getUsernames(last));
+    assertEquals(-1, last.getPagination().getContinueToken());
+  }
+
+  @Test
+  void shouldScanUsersOfFederatedRealmByPages() {
+    database.addUsers("realm", IntStream.rangeClosed(1, 1000)
+        .mapToObj(i -> String.format("user%04d", i)).collect(Collectors.toList()), "code", "odd");
+    database.addUsers("realm", List.of("user1001", "user1002"), "code", "even");
+    when(realm.getComponentsStream(any(), any()))
+        .thenAnswer(invocation -> Stream.of(mock(ComponentModel.class)));
+    var batchSearch = new BatchUserSearch(session, realm, UserApiDependencies.defaults());
+
+    var result = batchSearch.search(Map.of("even", request(null)), SearchRecorder.NOOP)
+        .get("even");
+
+    assertEquals(List.of("user1001", "user1002"), getUsernames(result));
+    assertEquals(-1, result.getPagination().getContinueToken());
+  }
+
+  @Test
+  void shouldRejectNullQueries() {
+    var batchSearch = new BatchUserSearch(session, realm, UserApiDependencies.defaults());
+    var requests = new HashMap<String, SearchUsersByAttributesRequestDto>();
+    requests.put("empty", null);
+
+    assertThrows(BadRequestException.class,
+        () -> batchSearch.search(requests, SearchRecorder.NOOP));
+  }
+
+  private static SearchUsersByAttributesRequestDto request(String cursor) {
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesEquals(Map.of("code", List.of("even")));
+    requestDto.getPagination().setLimit(2);
+    requestDto.getPagination().setCursor(cursor);
+    var projection = new Projection();
+    projection.setFields(List.of("username"));
+    requestDto.setProjection(projection);
+    return requestDto;
+  }
+
+  private static List<String> getUsernames(SearchUsersByAttributesResponseDto responseDto) {
+    return responseDto.getUsers().stream().map(UserRepresentation::getUsername)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.MatchMode;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.AttributeStats;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.RealmAttributeStats;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+
+class CompiledUserQueryTest extends KeycloakBaseTest {
+
+  @Test
+  void shouldMatchUserWithAllConditions() {
+    var userModel = new InMemoryUserAdapter(session, realm, "id");
+    userModel.setAttribute("drfo", List.of("11110000", "33334444"));
+    userModel.setAttribute("fullName", List.of("Alex Smith"));
+    userModel.setAttribute("hierarchy", List.of("100.200"));
+
+    var query = CompiledUserQuery.compile(request(
+        Map.of("drfo", List.of("22226666", "33334444")),
+        Map.of("fullName", List.of("Bob", "Alex")),
+        Map.of("hierarchy", List.of("100.200.300")),
+        Map.of()), new PrefixExpander(null), null);
+
+    assertTrue(query.test(userModel));
+  }
+
+  @Test
+  void shouldRejectUserIfAnyConditionFails() {
+    var userModel = new InMemoryUserAdapter(session, realm, "id");
+    userModel.setAttribute("drfo", List.of("11110000"));
+    userModel.setAttribute("fullName", List.of("Alex Smith"));
+
+    var query = CompiledUserQuery.compile(request(
+        Map.of("drfo", List.of("11110000")),
+        Map.of("fullName", List.of("Smith")),
+        Map.of(),
+        Map.of()), new PrefixExpander(null), null);
+
+    assertFalse(query.test(userModel));
+  }
+
+  @Test
+  void shouldMatchStartsOnSegmentBoundaryOnlyWithSeparator() {
+    var userModel = new InMemoryUserAdapter(session, realm, "id");
+    userModel.setAttribute("hierarchy", List.of("100.2"));
+
+    var requestDto = request(Map.of(), Map.of(),
+        Map.of("hierarchy", List.of("100.200.300")), Map.of());
+
+    assertTrue(CompiledUserQuery.compile(requestDto, new PrefixExpander(null), null)
+        .test(userModel));
+    assertFalse(CompiledUserQuery.compile(requestDto, new PrefixExpander("."), null)
+        .test(userModel));
+  }
+
+  @Test
+  void shouldIgnoreAttributesWithoutValues() {
+    var userModel = new InMemoryUserAdapter(session, realm, "id");
+
+    var query = CompiledUserQuery.compile(
+        request(Map.of("drfo", List.of()), Map.of(), Map.of(), Map.of()),
+        new PrefixExpander(null), null);
+
+    assertTrue(query.isEmpty());
+    assertTrue(query.test(userModel));
+  }
+
+  @Test
+  void shouldCompareNormalizedValuesOfAttributesWithMatchModes() {
+    var userModel = new InMemoryUserAdapter(session, realm, "id");
+    userModel.setAttribute("fullName", List.of(" JOSE\u0301 Smith"));
+    userModel.setAttribute("drfo", List.of("ABC"));
+
+    var query = CompiledUserQuery.compile(request(
+        Map.of("drfo", List.of("ABC")),
+        Map.of("fullName", List.of("jos\u00e9")),
+        Map.of(),
+        Map.of("fullName",
+            List.of(MatchMode.CASE_INSENSITIVE, MatchMode.NORMALIZED, MatchMode.TRIMMED))),
+        new PrefixExpander(null), null);
+    var exactQuery = CompiledUserQuery.compile(
+        request(Map.of("drfo", List.of("abc")), Map.of(), Map.of(), Map.of()),
+        new PrefixExpander(null), null);
+
+    assertTrue(query.test(userModel));
+    assertFalse(exactQuery.test(userModel));
+  }
+
+  @Test
+  void shouldCheckTheMostSelectiveConditionFirstByStatistics() {
+    var userModel = spy(new InMemoryUserAdapter(session, realm, "id"));
+    var stats = new RealmAttributeStats(100, Map.of(
+        "subjectType", new AttributeStats(100, 2, Map.of("INDIVIDUAL", 90L, "LEGAL", 10L)),
+        "edrpou", new AttributeStats(10, 10, Map.of())), 0L);
+
+    var query = CompiledUserQuery.compile(request(
+        Map.of("subjectType", List.of("INDIVIDUAL")),
+        Map.of("edrpou", List.of("1111")),
+        Map.of(),
+        Map.of()), new PrefixExpander(null), stats);
+
+    assertFalse(query.test(userModel));
+    verify(userModel).getAttributeStream("edrpou");
+    verify(userModel, never()).getAttributeStream("subjectType");
+  }
+
+  private static SearchUsersByAttributesRequestDto request(Map<String, List<String>> equals,
+      Map<String, List<String>> startsWith, Map<String, List<String>> thatAreStartFor,
+      Map<String, List<MatchMode>> matchModes) {
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesEquals(equals);
+    requestDto.setAttributesStartsWith(startsWith);
+    requestDto.setAttributesThatAreStartFor(thatAreStartFor);
+    requestDto.setMatchModes(matchModes);
+    return requestDto;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.ws.rs.BadRequestException;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.UserModel;
+
+class ContinueCursorTest {
+
+  @Test
+  void shouldEncodeAndDecodeCursorWithUsername() {
+    var userModel = mock(UserModel.class);
+    when(userModel.getUsername()).thenReturn("user:with:colons");
+
+    var cursor = ContinueCursor.ofOffset(41).advance(userModel);
+    var decoded = ContinueCursor.decode(cursor.encode());
+
+    assertEquals(cursor, decoded);
+    assertEquals(42, decoded.getOffset());
+    assertEquals("user:with:colons", decoded.getLastUsername());
+  }
+
+  @Test
+  void shouldEncodeAndDecodeOffsetOnlyCursor() {
+    var decoded = ContinueCursor.decode(ContinueCursor.ofOffset(7).encode());
+
+    assertEquals(7, decoded.getOffset());
+    assertFalse(decoded.hasLastUsername());
+  }
+
+  @Test
+  void shouldRejectMalformedCursor() {
+    assertThrows(BadRequestException.class, () -> ContinueCursor.decode("%%%"));
+    assertThrows(BadRequestException.class, () -> ContinueCursor.decode("LTE"));
+  }
+
+  @Test
+  void shouldDecodeLegacyOffsetCursor() {
+    var decoded = ContinueCursor.decode(encodeLegacy("15"));
+
+    assertEquals(ContinueCursor.ofOffset(15), decoded);
+  }
+
+  @Test
+  void shouldSeekByUsernameOfLegacyCursor() {
+    // offset of the first version counted only matched users when the database selected the page
+    var decoded = ContinueCursor.decode(encodeLegacy("3:user7"));
+
+    assertFalse(decoded.hasOffset());
+    assertEquals("user7", decoded.getLastUsername());
+  }
+
+  @Test
+  void shouldKeepUnknownOffsetWhenAdvanced() {
+    var userModel = mock(UserModel.class);
+    when(userModel.getUsername()).thenReturn("user8");
+
+    var cursor = ContinueCursor.afterUsername("user7").advance(userModel);
+
+    assertFalse(cursor.hasOffset());
+    assertTrue(cursor.hasLastUsername());
+    assertEquals(cursor, ContinueCursor.decode(cursor.encode()));
+    assertThrows(IllegalStateException.class, ContinueCursor.ofOffset(-1)::encode);
+  }
+
+  private static String encodeLegacy(String raw) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+}
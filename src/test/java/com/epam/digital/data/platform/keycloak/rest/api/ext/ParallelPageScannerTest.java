@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.ParallelPageScanner.Match;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.UserSearchPlan.UserPageSource;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.SearchRecorder;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.UserModel;
+
+class ParallelPageScannerTest {
+
+  private final List<UserModel> users = IntStream.range(0, 1000)
+      .mapToObj(i -> {
+        var user = mock(UserModel.class);
+        when(user.getId()).thenReturn("id" + i);
+        when(user.getUsername()).thenReturn(String.format("user%04d", i));
+        return user;
+      })
+      .collect(Collectors.toList());
+  private final UserPageSource source = (cursor, maxResults) -> users.stream()
+      .skip(cursor.getOffset()).limit(maxResults);
+  private final Predicate<UserModel> everyThirtySeventh = user -> users.indexOf(user) % 37 == 0;
+
+  private ParallelPageScanner scanner;
+
+  @BeforeEach
+  void setUp() {
+    var sessionFactory = mock(KeycloakSessionFactory.class);
+    when(sessionFactory.create()).thenAnswer(
+        invocation -> mock(KeycloakSession.class, RETURNS_DEEP_STUBS));
+    scanner = new ParallelPageScanner(3);
+    scanner.start(sessionFactory);
+  }
+
+  @AfterEach
+  void tearDown() {
+    scanner.close();
+  }
+
+  @Test
+  void shouldReturnMatchesWithCursorsOfSequentialSearch() {
+    var matches = scanner.scan(session -> source, everyThirtySeventh, ContinueCursor.start(), 5,
+        6, SearchRecorder.NOOP);
+
+    assertEquals(List.of("id0", "id37", "id74", "id111", "id148", "id185"),
+        matches.stream().map(Match::getUserId).collect(Collectors.toList()));
+    assertEquals(ContinueCursor.start(), matches.get(0).getCursor());
+    assertEquals(ContinueCursor.of(111, "user0110"), matches.get(3).getCursor());
+    assertEquals(ContinueCursor.of(185, "user0184"), matches.get(5).getCursor());
+  }
+
+  @Test
+  void shouldContinueFromCursor() {
+    var matches = scanner.scan(session -> source, user -> users.indexOf(user) % 100 == 0,
+        ContinueCursor.of(300, "user0299"), 10, 2, SearchRecorder.NOOP);
+
+    assertEquals(List.of("id300", "id400"),
+        matches.stream().map(Match::getUserId).collect(Collectors.toList()));
+    assertEquals(ContinueCursor.of(300, "user0299"), matches.get(0).getCursor());
+    // the first user of a page, the previous user is taken from the previous page
+    assertEquals(ContinueCursor.of(400, "user0399"), matches.get(1).getCursor());
+  }
+
+  @Test
+  void shouldStopAtTheEndOfUsers() {
+    var matches = scanner.scan(session -> source, everyThirtySeventh, ContinueCursor.start(), 5,
+        100, SearchRecorder.NOOP);
+
+    assertEquals(28, matches.size());
+    assertEquals("id999", matches.get(27).getUserId());
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class PrefixExpanderTest {
+
+  @Test
+  void shouldExpandIntoAllCharacterPrefixesWithoutSeparator() {
+    var expander = new PrefixExpander(null);
+
+    assertEquals(List.of("", "1", "10", "100", "100.", "100.2"),
+        List.copyOf(expander.expand("100.2")));
+  }
+
+  @Test
+  void shouldExpandOnlyOnSegmentBoundariesWithSeparator() {
+    var expander = new PrefixExpander(".");
+
+    assertEquals(List.of("100", "100.200", "100.200.300", "100.200.300.400"),
+        List.copyOf(expander.expand("100.200.300.400")));
+  }
+
+  @Test
+  void shouldExpandAttributesAndSkipEmptyOnes() {
+    var expander = new PrefixExpander(".");
+
+    var expanded = expander.expand(
+        Map.of("hierarchy", List.of("100.200", "100.201"), "attribute1", List.of()));
+
+    assertEquals(Set.of("hierarchy"), expanded.keySet());
+    assertEquals(List.of("100", "100.200", "100.201"), expanded.get("hierarchy"));
+  }
+}
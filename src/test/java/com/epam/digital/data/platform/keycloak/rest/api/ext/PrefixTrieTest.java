@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PrefixTrieTest {
+
+  private final PrefixTrie trie = new PrefixTrie(
+      List.of("100.200", "100.300", "100.200.300", "2000", "100.200"));
+
+  @Test
+  void shouldCountDistinctValues() {
+    assertEquals(4, trie.size());
+  }
+
+  @Test
+  void shouldFindPrefixOfValue() {
+    assertTrue(trie.hasPrefixOf("100.200"));
+    assertTrue(trie.hasPrefixOf("100.2001"));
+    assertTrue(trie.hasPrefixOf("100.300.400"));
+    assertTrue(trie.hasPrefixOf("20001"));
+    assertFalse(trie.hasPrefixOf("100.2"));
+    assertFalse(trie.hasPrefixOf("100.400"));
+    assertFalse(trie.hasPrefixOf(""));
+  }
+
+  @Test
+  void shouldCheckThatValueIsPrefixOfAny() {
+    assertTrue(trie.isPrefixOfAny(""));
+    assertTrue(trie.isPrefixOfAny("1"));
+    assertTrue(trie.isPrefixOfAny("100.2"));
+    assertTrue(trie.isPrefixOfAny("100.200.3"));
+    assertTrue(trie.isPrefixOfAny("2000"));
+    assertFalse(trie.isPrefixOfAny("100.200.300.400"));
+    assertFalse(trie.isPrefixOfAny("100.4"));
+    assertFalse(trie.isPrefixOfAny("3"));
+  }
+
+  @Test
+  void shouldContainOnlyAddedValues() {
+    assertTrue(trie.contains("100.200"));
+    assertTrue(trie.contains("100.200.300"));
+    assertFalse(trie.contains("100"));
+    assertFalse(trie.contains("100.200.3"));
+    assertFalse(trie.contains(""));
+  }
+
+  @Test
+  void shouldMatchEverythingWithEmptyPrefix() {
+    var emptyPrefixTrie = new PrefixTrie(List.of("", "abc"));
+
+    assertTrue(emptyPrefixTrie.hasPrefixOf("xyz"));
+    assertTrue(emptyPrefixTrie.contains(""));
+    assertFalse(new PrefixTrie(List.of()).isPrefixOfAny(""));
+  }
+}
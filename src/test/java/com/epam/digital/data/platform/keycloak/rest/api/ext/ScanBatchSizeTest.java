@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ScanBatchSizeTest {
+
+  @Test
+  void shouldGrowWhileMostUsersAreFilteredOut() {
+    var batchSize = new ScanBatchSize(11, 500);
+
+    batchSize.observe(11, 0);
+    assertEquals(44, batchSize.get());
+    batchSize.observe(44, 21);
+    assertEquals(176, batchSize.get());
+    batchSize.observe(176, 1);
+    assertEquals(500, batchSize.get());
+    batchSize.observe(500, 0);
+    assertEquals(500, batchSize.get());
+  }
+
+  @Test
+  void shouldKeepSizeWhenUsersMatchOrSourceIsExhausted() {
+    var batchSize = new ScanBatchSize(11, 500);
+
+    batchSize.observe(11, 6);
+    assertEquals(11, batchSize.get());
+    batchSize.observe(7, 0);
+    assertEquals(11, batchSize.get());
+  }
+
+  @Test
+  void shouldKeepUnlimitedBatch() {
+    var batchSize = new ScanBatchSize(-1, 500);
+
+    batchSize.observe(1000, 0);
+    assertEquals(-1, batchSize.get());
+  }
+}
@@ -17,7 +17,11 @@
 package com.epam.digital.data.platform.keycloak.rest.api.ext;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.SearchUserRequestDto;
@@ -31,6 +35,7 @@ import org.junit.jupiter.api.Test;
 import org.keycloak.models.KeycloakContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
 import org.keycloak.models.UserProvider;
 import org.keycloak.storage.adapter.InMemoryUserAdapter;
 
@@ -152,6 +157,36 @@ class UserApiProviderLogicTest {
     assertEquals(1, userRepresentations.get(0).getAttributes().get("KATOTTG").size());
   }
 
+  @Test
+  void shouldReadUsersByPagesIfAttributesEqualsIsEmpty() {
+    prepareKeycloakUsers();
+    var requestDto = new SearchUsersByEqualsAndStartsWithAttributesRequestDto();
+    requestDto.attributesStartsWith = Map.of("KATOTTG", List.of("UA0102030405"));
+
+    userApiProviderTestImpl.searchUsersByAttributes(mock(HttpRequest.class), requestDto);
+
+    verify(userProvider).getUsersStream(realm, 0, ScanBatchSize.DEFAULT_MAX);
+    verify(userProvider, never()).getUsersStream(realm);
+  }
+
+  @Test
+  void shouldReadUsersByPagesOfConfiguredSizeAndMatchRawPrefixes() {
+    prepareKeycloakUsers();
+    var config = UserApiProviderConfig.builder().hierarchySeparator(".").maxScanBatchSize(2)
+        .build();
+    var provider = new UserApiProviderTestImpl(session,
+        UserApiDependencies.builder().config(config).build());
+    var requestDto = new SearchUsersByEqualsAndStartsWithAttributesRequestDto();
+    requestDto.attributesStartsWith = Map.of("KATOTTG", List.of("UA0102030405"));
+
+    var userRepresentations = provider.searchUsersByAttributes(mock(HttpRequest.class),
+        requestDto);
+
+    assertEquals(2, userRepresentations.size());
+    verify(userProvider).getUsersStream(realm, 0, 2);
+    verify(userProvider).getUsersStream(realm, 2, 2);
+  }
+
   private void prepareKeycloakUsers() {
     var userModel1 = new InMemoryUserAdapter(session, realm, "id");
     userModel1.setAttribute("key1", List.of("value1"));
@@ -165,7 +200,9 @@ class UserApiProviderLogicTest {
 
     when(userProvider.searchForUserByUserAttributeStream(realm, "key1", "value1"))
         .thenReturn(Stream.of(userModel1, userModel2));
-    when(userProvider.getUsersStream(realm))
-        .thenReturn(Stream.of(userModel1, userModel2, userModel3));
+    var users = List.<UserModel>of(userModel1, userModel2, userModel3);
+    when(userProvider.getUsersStream(eq(realm), anyInt(), anyInt())).thenAnswer(
+        invocation -> users.stream().skip(invocation.<Integer>getArgument(1))
+            .limit(invocation.<Integer>getArgument(2)));
   }
 }
@@ -22,14 +22,25 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
+import com.epam.digital.data.platform.keycloak.rest.api.ext.cache.SearchResultCache;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.BatchSearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUserChangesRequestDto;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto;
 import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto.Pagination;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndexEventListenerFactory;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.SearchRecorder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.ws.rs.BadRequestException;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.SneakyThrows;
@@ -37,6 +48,7 @@ import org.jboss.resteasy.spi.HttpRequest;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.keycloak.models.*;
@@ -49,6 +61,9 @@ class UserApiProviderSearchByAttributesV2Test {
   private static Map<String, User> userStorageMap;
 
   HttpRequest request;
+  KeycloakSession session;
+  RealmModel realm;
+  UserProvider userProvider;
   UserApiProvider userApiProvider;
 
   ObjectMapper objectMapper;
@@ -74,10 +89,10 @@ class UserApiProviderSearchByAttributesV2Test {
   void setUp() {
     objectMapper = new ObjectMapper();
 
-    var session = Mockito.mock(KeycloakSession.class);
+    session = Mockito.mock(KeycloakSession.class);
     var context = Mockito.mock(KeycloakContext.class);
-    var realm = Mockito.mock(RealmModel.class);
-    var userProvider = Mockito.mock(UserProvider.class);
+    realm = Mockito.mock(RealmModel.class);
+    userProvider = Mockito.mock(UserProvider.class);
 
     request = Mockito.mock(HttpRequest.class);
     userApiProvider = new UserApiProviderTestImpl(session, new UserFilter());
@@ -127,6 +142,183 @@ class UserApiProviderSearchByAttributesV2Test {
     });
   }
 
+  @Test
+  @SneakyThrows
+  void searchUsersByAttributesFollowingCursor() {
+    var requestDto = objectMapper.readValue(
+        "{\"attributesStartsWith\":{\"hierarchy\":[\"100\",\"101.200\"]},\"pagination\":{\"limit\":2}}",
+        SearchUsersByAttributesRequestDto.class);
+
+    var foundUsers = new ArrayList<String>();
+    SearchUsersByAttributesResponseDto responseDto;
+    do {
+      responseDto = userApiProvider.searchUsersByAttributes(request, requestDto);
+      responseDto.getUsers().forEach(user -> foundUsers.add(user.getUsername()));
+      requestDto.getPagination().setCursor(responseDto.getPagination().getCursor());
+    } while (responseDto.getPagination().getCursor() != null);
+
+    Assertions.assertEquals(List.of("user1", "user3", "user4", "user5", "user6", "user7", "user8"),
+        foundUsers);
+    Assertions.assertEquals(-1, responseDto.getPagination().getContinueToken());
+  }
+
+  @Test
+  @SneakyThrows
+  void streamUsersByAttributes() {
+    var requestDto = objectMapper.readValue(
+        "{\"attributesStartsWith\":{\"hierarchy\":[\"100\",\"101.200\"]},\"pagination\":{\"limit\":2,\"continueToken\":3}}",
+        SearchUsersByAttributesRequestDto.class);
+
+    var output = new ByteArrayOutputStream();
+    userApiProvider.streamUsersByAttributes(request, requestDto).write(output);
+
+    var lines = output.toString(StandardCharsets.UTF_8).split("\n");
+    var foundUsers = new ArrayList<String>();
+    for (var line : lines) {
+      foundUsers.add(objectMapper.readValue(line, UserRepresentation.class).getUsername());
+    }
+    Assertions.assertEquals(List.of("user4", "user5", "user6", "user7", "user8"), foundUsers);
+  }
+
+  @Test
+  @SneakyThrows
+  void batchSearchUsersByAttributes() {
+    var requestDto = objectMapper.readValue("{\"queries\":{"
+            + "\"hierarchy\":{\"attributesStartsWith\":{\"hierarchy\":[\"100\",\"101.200\"]},\"pagination\":{\"limit\":2}},"
+            + "\"attribute1\":{\"attributesEquals\":{\"attribute1\":[\"value1\",\"value2\"]}},"
+            + "\"done\":{\"pagination\":{\"continueToken\":-1}}}}",
+        BatchSearchUsersByAttributesRequestDto.class);
+
+    var results = userApiProvider.batchSearchUsersByAttributes(request, requestDto).getResults();
+
+    Assertions.assertEquals(List.of("hierarchy", "attribute1", "done"),
+        List.copyOf(results.keySet()));
+    Assertions.assertEquals(List.of("user1", "user3"), getUsernames(results.get("hierarchy")));
+    Assertions.assertEquals(3, results.get("hierarchy").getPagination().getContinueToken());
+    Assertions.assertEquals(List.of("user1", "user2"), getUsernames(results.get("attribute1")));
+    Assertions.assertEquals(-1, results.get("attribute1").getPagination().getContinueToken());
+    Assertions.assertEquals(List.of(), getUsernames(results.get("done")));
+
+    var nextRequestDto = requestDto.getQueries().get("hierarchy");
+    nextRequestDto.getPagination()
+        .setCursor(results.get("hierarchy").getPagination().getCursor());
+    var nextResults = userApiProvider.batchSearchUsersByAttributes(request,
+        batchOf(Map.of("hierarchy", nextRequestDto))).getResults();
+
+    Assertions.assertEquals(List.of("user4", "user5"), getUsernames(nextResults.get("hierarchy")));
+    Assertions.assertEquals(5, nextResults.get("hierarchy").getPagination().getContinueToken());
+  }
+
+  @Test
+  @SneakyThrows
+  void searchUsersByAttributesFromCacheRecordsMatchedUsers() {
+    var matched = new AtomicInteger();
+    var dependencies = UserApiDependencies.builder()
+        .searchResultCache(new SearchResultCache(10, 60_000, 10))
+        .metrics(endpoint -> new SearchRecorder() {
+          @Override
+          public void matched() {
+            matched.incrementAndGet();
+          }
+        })
+        .build();
+    var cachingProvider = new UserApiProviderTestImpl(session, dependencies);
+    var requestDto = objectMapper.readValue(
+        "{\"attributesEquals\":{\"attribute1\":[\"value1\"]},\"pagination\":{\"limit\":2}}",
+        SearchUsersByAttributesRequestDto.class);
+    when(realm.getId()).thenReturn("realmId");
+    when(realm.getEventsListenersStream())
+        .thenAnswer(invocation -> Stream.of(AttributeIndexEventListenerFactory.ID));
+    var cachedUser = mapToUserModelMock(userStorageMap.get("user1"));
+    when(userProvider.getUserById(realm, "user1")).thenReturn(cachedUser);
+
+    var foundResponseDto = cachingProvider.searchUsersByAttributes(request, requestDto);
+    var cachedResponseDto = cachingProvider.searchUsersByAttributes(request, requestDto);
+
+    Assertions.assertEquals(List.of("user1"), getUsernames(foundResponseDto));
+    Assertions.assertEquals(List.of("user1"), getUsernames(cachedResponseDto));
+    Assertions.assertEquals(2, matched.get());
+    Mockito.verify(userProvider).getUserById(realm, "user1");
+  }
+
+  @Test
+  @SneakyThrows
+  void searchUsersByAttributesInParallelReadsOnlyUsersOfPage() {
+    var parallelProvider = new UserApiProviderTestImpl(session, parallelDependencies());
+    var requestDto = objectMapper.readValue("{\"attributesEquals\":{\"attribute1\":"
+            + "[\"value1\",\"value3\"]},\"pagination\":{\"limit\":1}}",
+        SearchUsersByAttributesRequestDto.class);
+    var foundUser = mapToUserModelMock(userStorageMap.get("user1"));
+    when(userProvider.getUserById(realm, "user1")).thenReturn(foundUser);
+
+    var responseDto = parallelProvider.searchUsersByAttributes(request, requestDto);
+
+    Assertions.assertEquals(List.of("user1"), getUsernames(responseDto));
+    Assertions.assertEquals(7, responseDto.getPagination().getContinueToken());
+    Mockito.verify(userProvider, Mockito.never()).getUserById(realm, "user8");
+  }
+
+  @Test
+  @SneakyThrows
+  void searchUsersByAttributesInParallelContinuesAfterRemovedUser() {
+    var parallelProvider = new UserApiProviderTestImpl(session, parallelDependencies());
+    var requestDto = objectMapper.readValue("{\"attributesEquals\":{\"attribute1\":"
+            + "[\"value1\",\"value3\"]},\"pagination\":{\"limit\":1}}",
+        SearchUsersByAttributesRequestDto.class);
+    // user1 is removed after the scan has matched them
+
+    var responseDto = parallelProvider.searchUsersByAttributes(request, requestDto);
+
+    Assertions.assertEquals(List.of(), getUsernames(responseDto));
+    Assertions.assertEquals(7, responseDto.getPagination().getContinueToken());
+  }
+
+  @Test
+  void searchUserChangesWithoutChangeLog() {
+    var requestDto = new SearchUserChangesRequestDto();
+    requestDto.setSince(System.currentTimeMillis());
+
+    var responseDto = userApiProvider.searchUserChanges(request, requestDto);
+
+    Assertions.assertTrue(responseDto.isResyncRequired());
+    Assertions.assertEquals(List.of(), responseDto.getUsers());
+    Assertions.assertEquals(List.of(), responseDto.getUnmatchedUserIds());
+    Assertions.assertTrue(responseDto.getWatermark() <= System.currentTimeMillis());
+  }
+
+  @Test
+  @SneakyThrows
+  void countUsersByAttributes() {
+    var requestDto = objectMapper.readValue(
+        "{\"attributesStartsWith\":{\"hierarchy\":[\"100\",\"101.200\"]},\"pagination\":{\"limit\":2}}",
+        SearchUsersByAttributesRequestDto.class);
+
+    var responseDto = userApiProvider.countUsersByAttributes(request, requestDto);
+
+    Assertions.assertEquals(7, responseDto.getCount());
+  }
+
+  @Test
+  void searchUsersByAttributesWithMalformedCursor() {
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.getPagination().setCursor("not a cursor");
+
+    Assertions.assertThrows(BadRequestException.class,
+        () -> userApiProvider.searchUsersByAttributes(request, requestDto));
+  }
+
+  private static BatchSearchUsersByAttributesRequestDto batchOf(
+      Map<String, SearchUsersByAttributesRequestDto> queries) {
+    var requestDto = new BatchSearchUsersByAttributesRequestDto();
+    requestDto.setQueries(queries);
+    return requestDto;
+  }
+
+  private static List<String> getUsernames(SearchUsersByAttributesResponseDto responseDto) {
+    return responseDto.getUsers().stream().map(UserRepresentation::getUsername)
+        .collect(Collectors.toList());
+  }
+
   static Object[][] getRequestAndExpectedResponse() {
     return new Object[][]{{
         "{\"attributesEquals\":{\"attribute1\":[\"value1\",\"value2\"]}}",
@@ -190,6 +382,19 @@ class UserApiProviderSearchByAttributesV2Test {
         .build();
   }
 
+  private UserApiDependencies parallelDependencies() {
+    var sessionFactory = Mockito.mock(KeycloakSessionFactory.class);
+    when(sessionFactory.create()).thenAnswer(invocation -> {
+      var scanSession = Mockito.mock(KeycloakSession.class, Mockito.RETURNS_DEEP_STUBS);
+      when(scanSession.users()).thenReturn(userProvider);
+      when(scanSession.realms().getRealm(any())).thenReturn(realm);
+      return scanSession;
+    });
+    var pageScanner = new ParallelPageScanner(2);
+    pageScanner.start(sessionFactory);
+    return UserApiDependencies.builder().pageScanner(pageScanner).build();
+  }
+
   private UserModel mapToUserModelMock(User user) {
     var userModel = Mockito.mock(UserModel.class);
     var userCredentialManager = Mockito.mock(SubjectCredentialManager.class);
@@ -200,7 +405,7 @@ class UserApiProviderSearchByAttributesV2Test {
     }).when(userModel).getAttributeStream(anyString());
     Mockito.doReturn(user.getAttributes()).when(userModel).getAttributes();
     Mockito.doReturn(userCredentialManager).when(userModel).credentialManager();
-    Mockito.doReturn("someId").when(userModel).getId();
+    Mockito.doReturn(user.getUserName()).when(userModel).getId();
     return userModel;
   }
 
@@ -33,6 +33,10 @@ public class UserApiProviderTestImpl extends UserApiProvider {
     super(session, userFilter);
   }
 
+  public UserApiProviderTestImpl(KeycloakSession session, UserApiDependencies dependencies) {
+    super(session, dependencies);
+  }
+
   @Override
   public void validateRequestRealm(HttpRequest request, String realmName) {
   }
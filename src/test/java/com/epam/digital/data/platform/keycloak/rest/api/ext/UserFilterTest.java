@@ -17,10 +17,18 @@
 package com.epam.digital.data.platform.keycloak.rest.api.ext;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.RealmAttributeIndex;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.AttributeStatistics;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.stats.RealmAttributeStats;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
@@ -66,6 +74,52 @@ class UserFilterTest extends KeycloakBaseTest {
     assertEquals("11110000", result.get(0).getFirstAttribute("drfo"));
   }
 
+  @Test
+  void shouldSearchByAttributeWithLeastCountOfUsersInIndex() {
+    var userModel = new InMemoryUserAdapter(session, realm, "id");
+    userModel.setAttribute("fullName", List.of("Alex"));
+    userModel.setAttribute("drfo", List.of("11110000"));
+
+    var attributeIndex = mock(AttributeIndex.class);
+    var realmIndex = mock(RealmAttributeIndex.class);
+    when(attributeIndex.get(realm)).thenReturn(realmIndex);
+    when(realmIndex.covers(Set.of("drfo"))).thenReturn(true);
+    when(realmIndex.covers(Set.of("fullName"))).thenReturn(true);
+    when(realmIndex.countUsers("drfo", "11110000")).thenReturn(1000);
+    when(realmIndex.countUsers("fullName", "Alex")).thenReturn(1);
+    when(userProvider.searchForUserByUserAttributeStream(realm, "fullName", "Alex"))
+        .thenReturn(Stream.of(userModel));
+
+    var users = userFilter.filterUsersByAttributesEquals(session,
+        Map.of("fullName", "Alex", "drfo", "11110000"), attributeIndex,
+        AttributeStatistics.disabled());
+
+    assertEquals(1, users.count());
+    verify(userProvider, never()).searchForUserByUserAttributeStream(realm, "drfo", "11110000");
+  }
+
+  @Test
+  void shouldSearchByAttributeWithLeastEstimatedCountOfUsersWithoutIndex() {
+    var userModel = new InMemoryUserAdapter(session, realm, "id");
+    userModel.setAttribute("fullName", List.of("Alex"));
+    userModel.setAttribute("drfo", List.of("11110000"));
+
+    var attributeStatistics = mock(AttributeStatistics.class);
+    var stats = mock(RealmAttributeStats.class);
+    when(attributeStatistics.get(realm)).thenReturn(stats);
+    when(stats.estimateUsers("drfo", List.of("11110000"))).thenReturn(1000L);
+    when(stats.estimateUsers("fullName", List.of("Alex"))).thenReturn(1L);
+    when(userProvider.searchForUserByUserAttributeStream(realm, "fullName", "Alex"))
+        .thenReturn(Stream.of(userModel));
+
+    var users = userFilter.filterUsersByAttributesEquals(session,
+        Map.of("fullName", "Alex", "drfo", "11110000"), AttributeIndex.disabled(),
+        attributeStatistics);
+
+    assertEquals(1, users.count());
+    verify(userProvider, never()).searchForUserByUserAttributeStream(realm, "drfo", "11110000");
+  }
+
   @Test
   void filterUsersByAttributesStartsWith() {
     var userModel1 = new InMemoryUserAdapter(session, realm, "id");
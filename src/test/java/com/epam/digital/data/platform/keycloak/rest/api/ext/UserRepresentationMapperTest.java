@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.Projection;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.BadRequestException;
+import org.junit.jupiter.api.Test;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+
+class UserRepresentationMapperTest extends KeycloakBaseTest {
+
+  @Test
+  void shouldMapOnlyProjectedFieldsAndAttributes() {
+    var userModel = new InMemoryUserAdapter(session, realm, "userId");
+    userModel.setUsername("user1");
+    userModel.setEmail("user1@example.com");
+    userModel.setAttribute("drfo", List.of("11110000"));
+    userModel.setAttribute("edrpou", List.of("22226666"));
+    userModel.setAttribute("fullName", List.of("Alex"));
+
+    var projection = new Projection();
+    projection.setFields(List.of("id", "username"));
+    projection.setAttributes(List.of("drfo", "edrpou", "missing"));
+
+    var representation = new UserRepresentationMapper(session, realm, projection)
+        .toRepresentation(userModel);
+
+    assertEquals("userId", representation.getId());
+    assertEquals("user1", representation.getUsername());
+    assertNull(representation.getEmail());
+    assertEquals(Map.of("drfo", List.of("11110000"), "edrpou", List.of("22226666")),
+        representation.getAttributes());
+  }
+
+  @Test
+  void shouldRejectUnknownProjectionField() {
+    var projection = new Projection();
+    projection.setFields(List.of("credentials"));
+
+    assertThrows(BadRequestException.class,
+        () -> new UserRepresentationMapper(session, realm, projection));
+  }
+}
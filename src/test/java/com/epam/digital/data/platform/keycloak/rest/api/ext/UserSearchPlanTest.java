@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.MatchMode;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.jpa.H2Database;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+class UserSearchPlanTest {
+
+  private H2Database database;
+  private EntityManager em;
+  private RealmModel realm;
+  private KeycloakSession session;
+
+  @BeforeEach
+  void setUp() {
+    database = new H2Database();
+    em = database.createEntityManager();
+    // requests are served in a transaction, so the cursor of a query stays open while it's read
+    em.getTransaction().begin();
+    realm = mock(RealmModel.class);
+    when(realm.getId()).thenReturn("realm");
+    session = H2Database.mockSession(em, realm);
+  }
+
+  @AfterEach
+  void tearDown() {
+    em.getTransaction().rollback();
+    em.close();
+    database.close();
+  }
+
+  @Test
+  void shouldDetachUsersOfChunkOnlyAfterTheyAreConsumed() {
+    var usernames = IntStream.range(0, 1200)
+        .mapToObj(i -> String.format("user%04d", i))
+        .collect(Collectors.toList());
+    database.addUsers("realm", usernames, "KATOTTG", "UA0102");
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesThatAreStartFor(Map.of("KATOTTG", List.of("UA0102030405")));
+    var plan = UserSearchPlan.of(session, realm, requestDto,
+        new UserRepresentationMapper(session, realm, null), UserApiDependencies.defaults());
+
+    // required actions are a lazy association, so reading them fails if the user is detached
+    var requiredActions = plan.streamInChunks(1000)
+        .map(userModel -> userModel.getRequiredActionsStream().collect(Collectors.toList()))
+        .collect(Collectors.toList());
+
+    assertEquals(1200, requiredActions.size());
+    requiredActions.forEach(actions -> assertEquals(List.of("VERIFY_EMAIL"), actions));
+  }
+
+  @Test
+  void shouldCompareValuesWithMatchModesOfDatabaseSearchInMemory() {
+    // the database trims only spaces and doesn't normalize Unicode forms
+    database.addUsers("realm", List.of("user1"), "fullName", "\tJOSE\u0301 ");
+    database.addUsers("realm", List.of("user2"), "fullName", "Jos\u00e9");
+    database.addUsers("realm", List.of("user3"), "fullName", "Josef");
+    database.addUsers("realm", List.of("user4"), "code", "1");
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesEquals(Map.of("fullName", List.of(" jos\u00e9")));
+    requestDto.setMatchModes(Map.of("fullName",
+        List.of(MatchMode.CASE_INSENSITIVE, MatchMode.TRIMMED, MatchMode.NORMALIZED)));
+    var plan = UserSearchPlan.of(session, realm, requestDto,
+        new UserRepresentationMapper(session, realm, null), UserApiDependencies.defaults());
+
+    List<String> usernames;
+    try (var users = plan.streamInChunks(10)) {
+      usernames = users.map(UserModel::getUsername).collect(Collectors.toList());
+    }
+
+    assertEquals(List.of("user1", "user2"), usernames);
+  }
+
+  @Test
+  void shouldCountAllUsersOfRealmInContinueTokensOfDatabaseSearch() {
+    database.addUsers("realm", List.of("user01", "user03", "user05"), "code", "odd");
+    database.addUsers("realm", List.of("user02", "user04", "user06"), "code", "even");
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesEquals(Map.of("code", List.of("even")));
+    var plan = UserSearchPlan.of(session, realm, requestDto,
+        new UserRepresentationMapper(session, realm, null), UserApiDependencies.defaults());
+
+    // legacy continue token 3 means that user01, user02 and user03 were processed
+    List<String> usernames;
+    try (var users = plan.getSource().getUsersStream(ContinueCursor.ofOffset(3), 10)) {
+      usernames = users.map(UserModel::getUsername).collect(Collectors.toList());
+    }
+    var next = plan.resolveOffset(
+        plan.advance(ContinueCursor.ofOffset(3), session.users().getUserById(realm, "user04")));
+
+    assertEquals(List.of("user04", "user06"), usernames);
+    assertEquals(ContinueCursor.of(4, "user04"), next);
+  }
+}
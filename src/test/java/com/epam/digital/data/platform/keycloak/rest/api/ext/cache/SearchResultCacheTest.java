@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesResponseDto.Pagination;
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndexEventListenerFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.RealmModel;
+
+class SearchResultCacheTest {
+
+  private final RealmModel realm = mock(RealmModel.class);
+  private final AtomicLong now = new AtomicLong();
+  private final Pagination lastPage = Pagination.builder().continueToken(-1).build();
+
+  private SearchResultCache cache;
+
+  @BeforeEach
+  void setUp() {
+    when(realm.getId()).thenReturn("realmId");
+    when(realm.getEventsListenersStream())
+        .thenAnswer(invocation -> Stream.of(AttributeIndexEventListenerFactory.ID));
+    cache = new SearchResultCache(2, 1000, 2, now::get);
+  }
+
+  @Test
+  void shouldKeyEquivalentRequestsEqually() {
+    var first = request(Map.of("edrpou", List.of("1111", "2222"), "drfo", List.of()), 10);
+    var second = request(Map.of("edrpou", List.of("2222", "1111", "2222")), 10);
+
+    assertEquals(cache.keyOf(realm, first), cache.keyOf(realm, second));
+    assertEquals(cache.keyOf(realm, request(Map.of(), 0)),
+        cache.keyOf(realm, request(Map.of(), -5)));
+  }
+
+  @Test
+  void shouldReturnCachedPageUntilExpired() {
+    var key = cache.keyOf(realm, request(Map.of("edrpou", List.of("1111")), 10));
+    cache.put(key, List.of("user1", "user2"), lastPage);
+
+    now.set(999);
+    var page = cache.get(key);
+    assertNotNull(page);
+    assertEquals(List.of("user1", "user2"), page.getUserIds());
+    assertEquals(-1, page.getPagination().getContinueToken());
+
+    now.set(1000);
+    assertNull(cache.get(key));
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedPage() {
+    var first = cache.keyOf(realm, request(Map.of("edrpou", List.of("1111")), 10));
+    var second = cache.keyOf(realm, request(Map.of("edrpou", List.of("2222")), 10));
+    var third = cache.keyOf(realm, request(Map.of("edrpou", List.of("3333")), 10));
+    cache.put(first, List.of("user1"), lastPage);
+    cache.put(second, List.of("user2"), lastPage);
+    cache.get(first);
+    cache.put(third, List.of("user3"), lastPage);
+
+    assertNotNull(cache.get(first));
+    assertNull(cache.get(second));
+    assertNotNull(cache.get(third));
+  }
+
+  @Test
+  void shouldInvalidatePagesOfChangedRealm() {
+    var requestDto = request(Map.of("edrpou", List.of("1111")), 10);
+    var key = cache.keyOf(realm, requestDto);
+    cache.put(key, List.of("user1"), lastPage);
+
+    cache.invalidate("realmId");
+
+    assertNull(cache.get(key));
+    var newKey = cache.keyOf(realm, requestDto);
+    assertNull(cache.get(newKey));
+    // result of the search started before the change isn't cached
+    cache.put(key, List.of("user1"), lastPage);
+    assertNull(cache.get(newKey));
+  }
+
+  @Test
+  void shouldNotCachePagesLargerThanMaxPageSize() {
+    var key = cache.keyOf(realm, request(Map.of("edrpou", List.of("1111")), 0));
+    cache.put(key, List.of("user1", "user2", "user3"), lastPage);
+
+    assertNull(cache.get(key));
+  }
+
+  @Test
+  void shouldNotBuildKeysWhenDisabled() {
+    assertNull(SearchResultCache.disabled().keyOf(realm, request(Map.of(), 10)));
+  }
+
+  @Test
+  void shouldNotBuildKeysInRealmWithoutListener() {
+    var realmWithoutEvents = mock(RealmModel.class);
+    when(realmWithoutEvents.getEventsListenersStream())
+        .thenAnswer(invocation -> Stream.of("jboss-logging"));
+
+    assertNull(cache.keyOf(realmWithoutEvents, request(Map.of(), 10)));
+  }
+
+  private static SearchUsersByAttributesRequestDto request(Map<String, List<String>> equals,
+      int limit) {
+    var requestDto = new SearchUsersByAttributesRequestDto();
+    requestDto.setAttributesEquals(equals);
+    requestDto.getPagination().setLimit(limit);
+    return requestDto;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.changelog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.RealmModel;
+
+class RealmChangeLogTest {
+
+  @Test
+  void shouldKeepLastChangeOfEveryUser() {
+    var realmLog = new RealmChangeLog(10, 100);
+    realmLog.add("user1", 200);
+    realmLog.add("user2", 200);
+    realmLog.add("user3", 300);
+    realmLog.add("user1", 400);
+
+    assertEquals(List.of("user2", "user3", "user1"), realmLog.getChangedUserIds(100));
+    assertEquals(List.of("user3", "user1"), realmLog.getChangedUserIds(200));
+    assertEquals(List.of(), realmLog.getChangedUserIds(400));
+  }
+
+  @Test
+  void shouldNotCoverChangesDroppedFromFullLog() {
+    var realmLog = new RealmChangeLog(2, 100);
+    realmLog.add("user1", 200);
+    realmLog.add("user2", 300);
+    realmLog.add("user3", 400);
+
+    assertNull(realmLog.getChangedUserIds(100));
+    assertNull(realmLog.getChangedUserIds(199));
+    assertEquals(List.of("user2", "user3"), realmLog.getChangedUserIds(200));
+  }
+
+  @Test
+  void shouldNotCoverChangesBeforeStart() {
+    var realmLog = new RealmChangeLog(10, 100);
+
+    assertNull(realmLog.getChangedUserIds(99));
+    var realm = mock(RealmModel.class);
+    assertNull(new UserChangeLog(10, () -> 1000).getChangedUserIds(realm, 2000));
+    assertNull(UserChangeLog.disabled().getChangedUserIds(realm, 0));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.changelog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.index.AttributeIndexEventListenerFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+
+class UserChangeLogTest {
+
+  private final AtomicLong now = new AtomicLong(1000);
+  private final RealmModel subscribedRealm = realm("subscribed",
+      AttributeIndexEventListenerFactory.ID);
+  private final RealmModel realmWithoutEvents = realm("withoutEvents", "jboss-logging");
+
+  private UserChangeLog userChangeLog;
+
+  @BeforeEach
+  void setUp() {
+    var sessionFactory = mock(KeycloakSessionFactory.class);
+    var session = mock(KeycloakSession.class);
+    var realmProvider = mock(RealmProvider.class);
+    when(sessionFactory.create()).thenReturn(session);
+    when(session.getTransactionManager()).thenReturn(mock(KeycloakTransactionManager.class));
+    when(session.getProvider(ClusterProvider.class)).thenReturn(mock(ClusterProvider.class));
+    when(session.realms()).thenReturn(realmProvider);
+    when(realmProvider.getRealmsStream())
+        .thenAnswer(invocation -> Stream.of(subscribedRealm, realmWithoutEvents));
+
+    userChangeLog = new UserChangeLog(10, now::get);
+    userChangeLog.start(sessionFactory);
+  }
+
+  @Test
+  void shouldCoverRealmSubscribedAtStartWithoutChanges() {
+    now.set(2000);
+
+    assertEquals(List.of(), userChangeLog.getChangedUserIds(subscribedRealm, 1000));
+  }
+
+  @Test
+  void shouldNotCoverRealmWithoutEvents() {
+    now.set(2000);
+
+    assertNull(userChangeLog.getChangedUserIds(realmWithoutEvents, 1000));
+  }
+
+  @Test
+  void shouldCoverRealmSubscribedAfterStartSinceItIsFound() {
+    var laterSubscribedRealm = realm("later", AttributeIndexEventListenerFactory.ID);
+    now.set(2000);
+
+    assertNull(userChangeLog.getChangedUserIds(laterSubscribedRealm, 1000));
+
+    now.set(3000);
+    userChangeLog.add("later", "user1");
+
+    assertNull(userChangeLog.getChangedUserIds(laterSubscribedRealm, 1999));
+    assertEquals(List.of("user1"), userChangeLog.getChangedUserIds(laterSubscribedRealm, 2000));
+  }
+
+  private static RealmModel realm(String id, String eventsListener) {
+    var realm = mock(RealmModel.class);
+    when(realm.getId()).thenReturn(id);
+    when(realm.getEventsListenersStream()).thenAnswer(invocation -> Stream.of(eventsListener));
+    return realm;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+
+class AttributeIndexTest {
+
+  private final RealmProvider realmProvider = mock(RealmProvider.class);
+
+  private AttributeIndex attributeIndex;
+
+  @BeforeEach
+  void setUp() {
+    var sessionFactory = mock(KeycloakSessionFactory.class);
+    var session = mock(KeycloakSession.class);
+    when(sessionFactory.create()).thenReturn(session);
+    when(session.getTransactionManager()).thenReturn(mock(KeycloakTransactionManager.class));
+    when(session.getProvider(ClusterProvider.class)).thenReturn(mock(ClusterProvider.class));
+    when(session.realms()).thenReturn(realmProvider);
+
+    attributeIndex = new AttributeIndex(List.of("edrpou"), 0);
+    attributeIndex.start(sessionFactory);
+  }
+
+  @AfterEach
+  void tearDown() {
+    attributeIndex.close();
+  }
+
+  @Test
+  void shouldBuildIndexOfSubscribedRealm() {
+    var realm = realm("subscribed", AttributeIndexEventListenerFactory.ID);
+
+    assertNull(attributeIndex.get(realm));
+
+    verify(realmProvider, timeout(1000)).getRealm("subscribed");
+  }
+
+  @Test
+  void shouldNotUseIndexInRealmWithoutListener() {
+    var realm = realm("withoutEvents", "jboss-logging");
+
+    assertNull(attributeIndex.get(realm));
+
+    verify(realmProvider, after(100).never()).getRealm(any());
+  }
+
+  private static RealmModel realm(String id, String eventsListener) {
+    var realm = mock(RealmModel.class);
+    when(realm.getId()).thenReturn(id);
+    when(realm.getEventsListenersStream()).thenAnswer(invocation -> Stream.of(eventsListener));
+    return realm;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+
+class RealmAttributeIndexLoaderTest {
+
+  @Test
+  void shouldReadUsersOfProvidersByPages() {
+    var session = mock(KeycloakSession.class);
+    var realm = mock(RealmModel.class);
+    var userProvider = mock(UserProvider.class);
+    when(session.getProvider(UserProvider.class)).thenReturn(userProvider);
+    when(session.users()).thenReturn(userProvider);
+    var users = IntStream.range(0, 1500)
+        .mapToObj(i -> {
+          var user = new InMemoryUserAdapter(session, realm, "id" + i);
+          user.setUsername(String.format("user%04d", i));
+          user.setAttribute("subjectType", List.of(i % 2 == 0 ? "EVEN" : "ODD"));
+          return (UserModel) user;
+        })
+        .collect(Collectors.toList());
+    when(userProvider.getUsersStream(eq(realm), anyInt(), anyInt())).thenAnswer(
+        invocation -> users.stream().skip(invocation.<Integer>getArgument(1))
+            .limit(invocation.<Integer>getArgument(2)));
+
+    var index = RealmAttributeIndexLoader.load(session, realm, List.of("subjectType"), Set.of());
+
+    assertEquals(1500, index.size());
+    assertEquals(750, index.countUsers("subjectType", "EVEN"));
+    assertEquals(List.of("id0", "id2"), index.findUserIds(
+        Map.of("subjectType", List.of("EVEN")), Map.of(), null, 2));
+    verify(userProvider).getUsersStream(realm, 0, 1000);
+    verify(userProvider).getUsersStream(realm, 1000, 1000);
+    verify(userProvider, never()).getUsersStream(realm);
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+
+class RealmAttributeIndexTest {
+
+  private RealmAttributeIndex index;
+
+  @BeforeEach
+  void setUp() {
+    index = new RealmAttributeIndex(List.of("edrpou", "subjectType"));
+    index.addUser("user1", "user1");
+    index.addUser("user2", "user2");
+    index.addUser("user3", "user3");
+    index.addValue("user1", "edrpou", "1111");
+    index.addValue("user1", "subjectType", "INDIVIDUAL");
+    index.addValue("user2", "edrpou", "1111");
+    index.addValue("user2", "subjectType", "LEGAL");
+    index.addValue("user3", "edrpou", "2222");
+    index.addValue("user3", "subjectType", "INDIVIDUAL");
+    index.addValue("user3", "fullName", "ignored");
+    index.addValue("unknown", "edrpou", "1111");
+    index.seal();
+  }
+
+  @Test
+  void shouldIntersectAttributesAndUniteValues() {
+    assertEquals(List.of("user1", "user2"),
+        index.findUserIds(Map.of("edrpou", List.of("1111")), Map.of(), null, -1));
+    assertEquals(List.of("user1"), index.findUserIds(
+        Map.of("edrpou", List.of("1111"), "subjectType", List.of("INDIVIDUAL")), Map.of(), null,
+        -1));
+    assertEquals(List.of("user1", "user3"), index.findUserIds(
+        Map.of("edrpou", List.of("1111", "2222"), "subjectType", List.of("INDIVIDUAL")), Map.of(),
+        null, -1));
+    assertEquals(List.of(),
+        index.findUserIds(Map.of("edrpou", List.of("3333")), Map.of(), null, -1));
+  }
+
+  @Test
+  void shouldPaginateFoundUsersByUsername() {
+    var attributesEquals = Map.of("subjectType", List.of("INDIVIDUAL", "LEGAL"));
+
+    assertEquals(List.of("user1", "user2"),
+        index.findUserIds(attributesEquals, Map.of(), null, 2));
+    assertEquals(List.of("user3"), index.findUserIds(attributesEquals, Map.of(), "user2", 2));
+    assertEquals(List.of(), index.findUserIds(attributesEquals, Map.of(), "user3", 2));
+  }
+
+  @Test
+  void shouldReturnUsersAddedAfterBuildInUsernameOrder() {
+    index.put("user0", "user0", Map.of("subjectType", List.of("INDIVIDUAL")));
+    index.put("user3", "user25", Map.of("subjectType", List.of("INDIVIDUAL")));
+    var attributesEquals = Map.of("subjectType", List.of("INDIVIDUAL"));
+
+    assertEquals(List.of("user0", "user1"),
+        index.findUserIds(attributesEquals, Map.of(), null, 2));
+    assertEquals(List.of("user3"), index.findUserIds(attributesEquals, Map.of(), "user1", 2));
+    assertEquals(List.of("user0", "user1", "user3"),
+        index.findUserIds(Map.of(), Map.of(), null, -1).stream()
+            .filter(userId -> !userId.equals("user2")).collect(Collectors.toList()));
+    assertEquals(3, index.countUsersUpTo("user2"));
+  }
+
+  @Test
+  void shouldUpdateAndRemoveUsers() {
+    index.put("user1", "user1", Map.of("edrpou", List.of("2222"), "fullName", List.of("Alex")));
+    index.put("user4", "user4", Map.of("edrpou", List.of("1111")));
+    index.remove("user2");
+
+    assertEquals(List.of("user4"),
+        index.findUserIds(Map.of("edrpou", List.of("1111")), Map.of(), null, -1));
+    assertEquals(List.of("user1", "user3"),
+        index.findUserIds(Map.of("edrpou", List.of("2222")), Map.of(), null, -1));
+    assertEquals(List.of("user3"),
+        index.findUserIds(Map.of("subjectType", List.of("INDIVIDUAL")), Map.of(), null, -1));
+    assertEquals(3, index.size());
+  }
+
+  @Test
+  void shouldKeepDenseValuesAsBitmap() {
+    var denseIndex = new RealmAttributeIndex(List.of("subjectType"));
+    IntStream.range(0, 5000).forEach(i -> {
+      denseIndex.addUser("user" + i, String.format("user%04d", i));
+      denseIndex.addValue("user" + i, "subjectType", i % 2 == 0 ? "EVEN" : "ODD");
+    });
+    denseIndex.seal();
+    denseIndex.remove("user0");
+    denseIndex.put("user1", "user0001", Map.of("subjectType", List.of("EVEN")));
+
+    var found = denseIndex.findUserIds(Map.of("subjectType", List.of("EVEN")), Map.of(), null, 3);
+    assertEquals(List.of("user1", "user2", "user4"), found);
+    assertEquals(2500, denseIndex.findUserIds(Map.of("subjectType", List.of("EVEN")), Map.of(),
+        null, -1).size());
+  }
+
+  @Test
+  void shouldRejectNotIndexedAttribute() {
+    assertTrue(index.covers(List.of("edrpou")));
+    assertFalse(index.covers(List.of("edrpou", "fullName")));
+    assertThrows(IllegalArgumentException.class,
+        () -> index.findUserIds(Map.of("fullName", List.of("Alex")), Map.of(), null, -1));
+  }
+
+  @Test
+  void shouldFindSortedAttributeValuesByPrefix() {
+    var sortedIndex = new RealmAttributeIndex(List.of("subjectType"), List.of("hierarchy"));
+    sortedIndex.put("user1", "user1",
+        Map.of("hierarchy", List.of("100"), "subjectType", List.of("LEGAL")));
+    sortedIndex.put("user2", "user2", Map.of("hierarchy", List.of("100.200")));
+    sortedIndex.put("user3", "user3", Map.of("hierarchy", List.of("100.201.300")));
+    sortedIndex.put("user4", "user4", Map.of("hierarchy", List.of("101", "100.200.1")));
+
+    assertTrue(sortedIndex.isSorted("hierarchy"));
+    assertFalse(sortedIndex.isSorted("subjectType"));
+    assertEquals(List.of("user1", "user2", "user3", "user4"),
+        sortedIndex.findUserIds(Map.of(), Map.of("hierarchy", List.of("10")), null, -1));
+    assertEquals(List.of("user2", "user4"),
+        sortedIndex.findUserIds(Map.of(), Map.of("hierarchy", List.of("100.200")), null, -1));
+    assertEquals(List.of("user2", "user3", "user4"), sortedIndex.findUserIds(Map.of(),
+        Map.of("hierarchy", List.of("100.20", "100.201")), null, -1));
+    assertEquals(List.of("user1"), sortedIndex.findUserIds(Map.of("subjectType", List.of("LEGAL")),
+        Map.of("hierarchy", List.of("100")), null, -1));
+    assertEquals(List.of(),
+        sortedIndex.findUserIds(Map.of(), Map.of("hierarchy", List.of("102")), null, -1));
+    assertThrows(IllegalArgumentException.class, () -> sortedIndex.findUserIds(Map.of(),
+        Map.of("subjectType", List.of("LE")), null, -1));
+  }
+
+  @Test
+  void shouldTakeUserIdFromAdminEventOfUser() {
+    assertEquals("userId", AttributeIndexEventListenerFactory.getUserId(
+        adminEvent(ResourceType.USER, OperationType.UPDATE, "users/userId")));
+    assertNull(AttributeIndexEventListenerFactory.getUserId(
+        adminEvent(ResourceType.USER, OperationType.CREATE, "users/userId/role-mappings")));
+    assertNull(AttributeIndexEventListenerFactory.getUserId(
+        adminEvent(ResourceType.GROUP, OperationType.UPDATE, "groups/groupId")));
+  }
+
+  private static AdminEvent adminEvent(ResourceType resourceType, OperationType operationType,
+      String resourcePath) {
+    var event = mock(AdminEvent.class);
+    when(event.getResourceType()).thenReturn(resourceType);
+    when(event.getOperationType()).thenReturn(operationType);
+    when(event.getResourcePath()).thenReturn(resourcePath);
+    return event;
+  }
+}
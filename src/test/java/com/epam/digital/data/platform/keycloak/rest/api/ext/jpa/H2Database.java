@@ -0,0 +1,160 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserProvider;
+import org.keycloak.models.jpa.JpaUserProvider;
+import org.keycloak.models.jpa.entities.UserAttributeEntity;
+import org.keycloak.models.jpa.entities.UserEntity;
+import org.keycloak.models.jpa.entities.UserRequiredActionEntity;
+
+/**
+ * In-memory H2 database with the schema of the Keycloak JPA entities, so the generated JPQL is run
+ * by Hibernate against a real database. Every instance is a separate database.
+ */
+public class H2Database implements AutoCloseable {
+
+  private static final String ENTITIES_PACKAGE = "org/keycloak/models/jpa/entities/";
+
+  private final SessionFactory sessionFactory;
+
+  public H2Database() {
+    var registry = new StandardServiceRegistryBuilder()
+        .applySetting(AvailableSettings.URL,
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;NON_KEYWORDS=VALUE")
+        .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+        .build();
+    var sources = new MetadataSources(registry);
+    getEntityClasses().forEach(sources::addAnnotatedClass);
+    this.sessionFactory = sources.buildMetadata().buildSessionFactory();
+  }
+
+  public EntityManager createEntityManager() {
+    return sessionFactory.createEntityManager();
+  }
+
+  /**
+   * Runs the work in a transaction of a new entity manager, so the stored entities aren't cached
+   * by the entity managers used by the test.
+   */
+  public void inTransaction(Consumer<EntityManager> work) {
+    var em = createEntityManager();
+    try {
+      em.getTransaction().begin();
+      work.accept(em);
+      em.getTransaction().commit();
+    } finally {
+      em.close();
+    }
+  }
+
+  /**
+   * Stores users of the realm with the attributes given as name and value pairs and a required
+   * action. Id of the user is the username.
+   */
+  public void addUsers(String realmId, List<String> usernames, String... attributes) {
+    inTransaction(em -> {
+      for (var username : usernames) {
+        var userEntity = new UserEntity();
+        userEntity.setId(username);
+        userEntity.setUsername(username);
+        userEntity.setRealmId(realmId);
+        userEntity.setEmailConstraint(username);
+        userEntity.setCreatedTimestamp(0L);
+        em.persist(userEntity);
+        for (int i = 0; i < attributes.length; i += 2) {
+          var attribute = new UserAttributeEntity();
+          attribute.setId(UUID.randomUUID().toString());
+          attribute.setUser(userEntity);
+          attribute.setName(attributes[i]);
+          attribute.setValue(attributes[i + 1]);
+          em.persist(attribute);
+        }
+        var requiredAction = new UserRequiredActionEntity();
+        requiredAction.setUser(userEntity);
+        requiredAction.setAction("VERIFY_EMAIL");
+        em.persist(requiredAction);
+      }
+    });
+  }
+
+  /**
+   * @return session whose users are stored by {@link JpaUserProvider} in the entity manager and
+   * realm has no user federation
+   */
+  public static KeycloakSession mockSession(EntityManager em, RealmModel realm) {
+    var session = mock(KeycloakSession.class);
+    var jpaConnectionProvider = mock(JpaConnectionProvider.class);
+    var userProvider = new JpaUserProvider(session, em);
+    when(session.getProvider(JpaConnectionProvider.class)).thenReturn(jpaConnectionProvider);
+    when(jpaConnectionProvider.getEntityManager()).thenReturn(em);
+    when(session.getProvider(UserProvider.class)).thenReturn(userProvider);
+    when(session.users()).thenReturn(userProvider);
+    when(realm.getComponentsStream(any(), any())).thenAnswer(invocation -> Stream.empty());
+    return session;
+  }
+
+  @Override
+  public void close() {
+    sessionFactory.close();
+  }
+
+  private static List<Class<?>> getEntityClasses() {
+    try (var jar = new JarFile(UserEntity.class.getProtectionDomain().getCodeSource()
+        .getLocation().toURI().getPath())) {
+      return jar.stream()
+          .map(entry -> entry.getName())
+          .filter(name -> name.startsWith(ENTITIES_PACKAGE) && name.endsWith(".class"))
+          .map(name -> name.substring(0, name.length() - ".class".length()).replace('/', '.'))
+          .map(H2Database::loadClass)
+          .filter(entityClass -> entityClass.isAnnotationPresent(Entity.class))
+          .collect(Collectors.toList());
+    } catch (IOException | URISyntaxException e) {
+      throw new IllegalStateException("Keycloak JPA entities can't be read", e);
+    }
+  }
+
+  private static Class<?> loadClass(String name) {
+    try {
+      return Class.forName(name);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.jpa.entities.UserEntity;
+
+/**
+ * Runs the generated JPQL by Hibernate against an in-memory database.
+ */
+class JpaUserSearchDatabaseTest {
+
+  private H2Database database;
+  private EntityManager em;
+  private JpaUserSearch jpaUserSearch;
+
+  @BeforeEach
+  void setUp() {
+    database = new H2Database();
+    em = database.createEntityManager();
+    em.getTransaction().begin();
+    var realm = mock(RealmModel.class);
+    when(realm.getId()).thenReturn("realm");
+    jpaUserSearch = new JpaUserSearch(H2Database.mockSession(em, realm), realm, Map.of(), 0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    em.getTransaction().rollback();
+    em.close();
+    database.close();
+  }
+
+  @Test
+  void shouldSeekAfterUsername() {
+    database.addUsers("realm", List.of("user1", "user2", "user3", "user4", "user5"),
+        "code", "1");
+    database.addUsers("realm", List.of("user0", "user6"), "code", "2");
+
+    var usernames = getUsernames(Map.of("code", List.of("1")), Map.of(), "user2", 2);
+
+    assertEquals(List.of("user3", "user4"), usernames);
+  }
+
+  @Test
+  void shouldMatchLikeWildcardsLiterally() {
+    database.addUsers("realm", List.of("percent"), "code", "10%x");
+    database.addUsers("realm", List.of("any"), "code", "10ax");
+    database.addUsers("realm", List.of("underscore"), "code", "10_y");
+    database.addUsers("realm", List.of("escape"), "code", "10!z");
+
+    assertEquals(List.of("percent"),
+        getUsernames(Map.of(), Map.of("code", List.of("10%")), null, -1));
+    assertEquals(List.of("underscore"),
+        getUsernames(Map.of(), Map.of("code", List.of("10_")), null, -1));
+    assertEquals(List.of("escape"),
+        getUsernames(Map.of(), Map.of("code", List.of("10!")), null, -1));
+  }
+
+  @Test
+  void shouldCountUsersUpToUsernameWithoutServiceAccounts() {
+    database.addUsers("realm", List.of("user1", "user2", "user3", "user4"), "code", "1");
+    database.addUsers("other", List.of("user0"), "code", "1");
+    database.inTransaction(transactionEm -> {
+      var serviceAccount = new UserEntity();
+      serviceAccount.setId("service-account");
+      serviceAccount.setUsername("service-account-client");
+      serviceAccount.setRealmId("realm");
+      serviceAccount.setEmailConstraint("service-account");
+      serviceAccount.setServiceAccountClientLink("client");
+      transactionEm.persist(serviceAccount);
+    });
+
+    assertEquals(3, jpaUserSearch.countUsersUpTo("user3"));
+    assertEquals(4, jpaUserSearch.countUsersUpTo("zzz"));
+    assertEquals(0, jpaUserSearch.countUsersUpTo("a"));
+  }
+
+  @Test
+  void shouldReadUsersByIdsInOrderOfIds() {
+    database.addUsers("realm", List.of("user1", "user2", "user3"), "code", "1");
+    database.addUsers("other", List.of("user4"), "code", "1");
+
+    var users = jpaUserSearch.getUsersByIds(List.of("user3", "missing", "user4", "user1", "user2"),
+        2);
+
+    assertEquals(List.of("user3", "user1", "user2"),
+        users.stream().map(UserModel::getUsername).collect(Collectors.toList()));
+  }
+
+  private List<String> getUsernames(Map<String, List<String>> attributesEquals,
+      Map<String, List<String>> attributesStartsWith, String afterUsername, int maxResults) {
+    try (var users = jpaUserSearch.getUsersStream(attributesEquals, attributesStartsWith,
+        Map.of(), afterUsername, 0, maxResults)) {
+      return users.map(UserModel::getUsername).collect(Collectors.toList());
+    }
+  }
+}
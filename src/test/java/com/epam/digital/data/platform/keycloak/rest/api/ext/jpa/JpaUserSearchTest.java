@@ -0,0 +1,242 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.dto.v2.SearchUsersByAttributesRequestDto.MatchMode;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+import org.keycloak.models.jpa.JpaUserProvider;
+import org.keycloak.models.jpa.entities.UserEntity;
+import org.keycloak.storage.UserStorageProvider;
+
+class JpaUserSearchTest {
+
+  private KeycloakSession session;
+  private RealmModel realm;
+  private EntityManager em;
+  private TypedQuery<UserEntity> query;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    session = mock(KeycloakSession.class);
+    realm = mock(RealmModel.class);
+    em = mock(EntityManager.class);
+    query = mock(TypedQuery.class);
+
+    var jpaConnectionProvider = mock(JpaConnectionProvider.class);
+    when(session.getProvider(JpaConnectionProvider.class)).thenReturn(jpaConnectionProvider);
+    when(jpaConnectionProvider.getEntityManager()).thenReturn(em);
+    when(realm.getId()).thenReturn("realmId");
+    when(em.createQuery(anyString(), eq(UserEntity.class))).thenReturn(query);
+    when(query.setFirstResult(anyInt())).thenReturn(query);
+    when(query.setMaxResults(anyInt())).thenReturn(query);
+    when(query.getResultStream()).thenReturn(Stream.empty());
+  }
+
+  @Test
+  void shouldBeSupportedForJpaUserProviderWithoutFederation() {
+    when(session.getProvider(UserProvider.class)).thenReturn(mock(JpaUserProvider.class));
+    when(realm.getComponentsStream("realmId", UserStorageProvider.class.getName()))
+        .thenReturn(Stream.empty());
+
+    assertTrue(JpaUserSearch.isSupported(session, realm));
+  }
+
+  @Test
+  void shouldNotBeSupportedForFederatedRealm() {
+    when(session.getProvider(UserProvider.class)).thenReturn(mock(JpaUserProvider.class));
+    when(realm.getComponentsStream("realmId", UserStorageProvider.class.getName()))
+        .thenReturn(Stream.of(new ComponentModel()));
+
+    assertFalse(JpaUserSearch.isSupported(session, realm));
+  }
+
+  @Test
+  void shouldNotBeSupportedForNonJpaUserProvider() {
+    when(session.getProvider(UserProvider.class)).thenReturn(mock(UserProvider.class));
+
+    assertFalse(JpaUserSearch.isSupported(session, realm));
+  }
+
+  @Test
+  void shouldPushDownAttributeFilters() {
+    var userEntity = new UserEntity();
+    userEntity.setId("userId");
+    userEntity.setUsername("user1");
+    when(query.getResultStream()).thenReturn(Stream.of(userEntity));
+
+    var users = new JpaUserSearch(session, realm, Map.of(), 0).getUsersStream(
+        Map.of("attribute1", List.of("value1", "value2")),
+        Map.of("hierarchy", List.of("100", "101_%")), Map.of(), null, 2, 10)
+        .collect(Collectors.toList());
+
+    verify(em).createQuery("select u from UserEntity u "
+        + "where u.realmId = :realmId and u.serviceAccountClientLink is null"
+        + " and exists (select a.id from UserAttributeEntity a where a.user = u"
+        + " and a.name = :p1 and a.value in :p2)"
+        + " and exists (select a.id from UserAttributeEntity a where a.user = u"
+        + " and a.name = :p3 and (a.value like :p4 escape '!' or a.value like :p5 escape '!'))"
+        + " order by u.username", UserEntity.class);
+    verify(query).setParameter("realmId", "realmId");
+    verify(query).setParameter("p1", "attribute1");
+    verify(query).setParameter("p2", List.of("value1", "value2"));
+    verify(query).setParameter("p3", "hierarchy");
+    verify(query).setParameter("p4", "100%");
+    verify(query).setParameter("p5", "101!_!%%");
+    verify(query).setHint("org.hibernate.readOnly", true);
+    verify(query).setFirstResult(2);
+    verify(query).setMaxResults(10);
+
+    assertEquals(List.of("user1"),
+        users.stream().map(UserModel::getUsername).collect(Collectors.toList()));
+  }
+
+  @Test
+  void shouldSearchExpandedAttributesThatAreStartForByExactMatch() {
+    new JpaUserSearch(session, realm, Map.of(), 0).getUsersStream(Map.of(), Map.of(),
+        Map.of("hierarchy", List.of("100", "100.200")), null, 0, -1).close();
+
+    verify(em).createQuery("select u from UserEntity u "
+        + "where u.realmId = :realmId and u.serviceAccountClientLink is null"
+        + " and exists (select a.id from UserAttributeEntity a where a.user = u"
+        + " and a.name = :p1 and a.value in :p2)"
+        + " order by u.username", UserEntity.class);
+    verify(query).setParameter("p1", "hierarchy");
+    verify(query).setParameter("p2", List.of("100", "100.200"));
+  }
+
+  @Test
+  void shouldOnlyCheckPresenceOfAttributesWithMatchModes() {
+    new JpaUserSearch(session, realm, Map.of("fullName",
+        Set.of(MatchMode.CASE_INSENSITIVE, MatchMode.TRIMMED, MatchMode.NORMALIZED)), 0)
+        .getUsersStream(Map.of("fullName", List.of(" Jos\u00e9 ")),
+            Map.of("fullName", List.of("jos")), Map.of(), null, 0, -1)
+        .close();
+
+    verify(em).createQuery("select u from UserEntity u "
+        + "where u.realmId = :realmId and u.serviceAccountClientLink is null"
+        + " and exists (select a.id from UserAttributeEntity a where a.user = u"
+        + " and a.name = :p1)"
+        + " and exists (select a.id from UserAttributeEntity a where a.user = u"
+        + " and a.name = :p2)"
+        + " order by u.username", UserEntity.class);
+    verify(query).setParameter("p1", "fullName");
+    verify(query).setParameter("p2", "fullName");
+  }
+
+  @Test
+  void shouldJoinAttributeOncePerAttributeValue() {
+    new JpaUserSearch(session, realm, Map.of(), 0)
+        .getUsersStreamByAttributeValues(Map.of("fullName", "Alex", "drfo", "11110000"))
+        .close();
+
+    verify(em).createQuery("select distinct u from UserEntity u"
+        + " join u.attributes a1 join u.attributes a2"
+        + " where u.realmId = :realmId"
+        + " and a1.name = :n1 and a1.value = :v1"
+        + " and a2.name = :n2 and a2.value = :v2"
+        + " order by u.username", UserEntity.class);
+    verify(query).setParameter("n1", "drfo");
+    verify(query).setParameter("v1", "11110000");
+    verify(query).setParameter("n2", "fullName");
+    verify(query).setParameter("v2", "Alex");
+  }
+
+  @Test
+  void shouldReadUnlimitedSearchWithFetchSize() {
+    new JpaUserSearch(session, realm, Map.of(), 1000)
+        .getUsersStream(Map.of("attribute1", List.of("value1")), Map.of(), Map.of(), null, 0, -1)
+        .close();
+
+    verify(query).setHint("org.hibernate.fetchSize", 1000);
+    verify(query, never()).setMaxResults(anyInt());
+  }
+
+  @Test
+  void shouldSeekAfterUsername() {
+    new JpaUserSearch(session, realm, Map.of(), 0)
+        .getUsersStream(Map.of(), Map.of(), Map.of(), "user5", 0, 3)
+        .close();
+
+    verify(em).createQuery("select u from UserEntity u "
+        + "where u.realmId = :realmId and u.serviceAccountClientLink is null"
+        + " and u.username > :p1"
+        + " order by u.username", UserEntity.class);
+    verify(query).setParameter("p1", "user5");
+    verify(query, never()).setFirstResult(anyInt());
+    verify(query).setMaxResults(3);
+  }
+
+  @Test
+  void shouldSkipEmptyAttributeValues() {
+    new JpaUserSearch(session, realm, Map.of(), 0)
+        .getUsersStream(Map.of("attribute1", List.of()), Map.of(), Map.of(), null, 0, -1).close();
+
+    verify(em).createQuery("select u from UserEntity u "
+        + "where u.realmId = :realmId and u.serviceAccountClientLink is null"
+        + " order by u.username", UserEntity.class);
+    verify(query, never()).setParameter(eq("p1"), any());
+    verify(query, never()).setMaxResults(-1);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldCountWithSingleQuery() {
+    TypedQuery<Long> countQuery = mock(TypedQuery.class);
+    when(em.createQuery(anyString(), eq(Long.class))).thenReturn(countQuery);
+    when(countQuery.getSingleResult()).thenReturn(42L);
+
+    var count = new JpaUserSearch(session, realm, Map.of(), 0).countUsers(
+        Map.of("attribute1", List.of("value1")), Map.of(), Map.of("hierarchy", List.of("100")));
+
+    assertEquals(42L, count);
+    verify(em).createQuery("select count(u) from UserEntity u "
+        + "where u.realmId = :realmId and u.serviceAccountClientLink is null"
+        + " and exists (select a.id from UserAttributeEntity a where a.user = u"
+        + " and a.name = :p1 and a.value in :p2)"
+        + " and exists (select a.id from UserAttributeEntity a where a.user = u"
+        + " and a.name = :p3 and a.value in :p4)", Long.class);
+    verify(countQuery).setParameter("p2", List.of("value1"));
+    verify(countQuery).setParameter("p4", List.of("100"));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
+
+class UserAttributeBatchLoaderTest {
+
+  private KeycloakSession session;
+  private EntityManager em;
+  private TypedQuery<Object[]> query;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    session = mock(KeycloakSession.class);
+    em = mock(EntityManager.class);
+    query = mock(TypedQuery.class);
+
+    var jpaConnectionProvider = mock(JpaConnectionProvider.class);
+    when(session.getProvider(JpaConnectionProvider.class)).thenReturn(jpaConnectionProvider);
+    when(jpaConnectionProvider.getEntityManager()).thenReturn(em);
+    when(em.createQuery(anyString(), eq(Object[].class))).thenReturn(query);
+    when(query.setParameter(anyString(), any())).thenReturn(query);
+  }
+
+  @Test
+  void shouldLoadAttributesOfBatchWithSingleQuery() {
+    when(query.getResultList()).thenReturn(List.of(
+        new Object[]{"u1", "drfo", "1111"},
+        new Object[]{"u1", "drfo", "2222"},
+        new Object[]{"u2", "edrpou", "3333"}));
+
+    var attributes = new UserAttributeBatchLoader(session, Set.of("drfo", "edrpou"), 10)
+        .load(List.of("u1", "u2"));
+
+    assertEquals(Map.of(
+        "u1", Map.of("drfo", List.of("1111", "2222")),
+        "u2", Map.of("edrpou", List.of("3333"))), attributes);
+    verify(em).createQuery(
+        "select a.user.id, a.name, a.value from UserAttributeEntity a"
+            + " where a.user.id in :userIds and a.name in :names", Object[].class);
+    verify(query).setParameter("userIds", List.of("u1", "u2"));
+    verify(query).setParameter("names", Set.of("drfo", "edrpou"));
+  }
+
+  @Test
+  void shouldServePrefetchedAttributesFromMemory() {
+    var user1 = mockUser("u1", null);
+    var user2 = mockUser("u2", null);
+    var federatedUser = mockUser("u3", "ldap");
+    when(query.getResultList())
+        .thenReturn(List.<Object[]>of(new Object[]{"u1", "drfo", "1111"}));
+
+    var users = new UserAttributeBatchLoader(session, Set.of("drfo"), 2)
+        .prefetch(Stream.of(user1, user2, federatedUser))
+        .collect(Collectors.toList());
+
+    assertEquals(3, users.size());
+    assertInstanceOf(PrefetchedUserModel.class, users.get(0));
+    assertEquals(List.of("1111"),
+        users.get(0).getAttributeStream("drfo").collect(Collectors.toList()));
+    assertEquals(List.of(), users.get(1).getAttributeStream("drfo").collect(Collectors.toList()));
+    assertSame(federatedUser, users.get(2));
+    verify(user1, never()).getAttributeStream("drfo");
+    // second batch has only federated user, so it isn't queried
+    verify(query, times(1)).getResultList();
+  }
+
+  @Test
+  void shouldDelegateBuiltInAndNotLoadedAttributes() {
+    var user = mockUser("u1", null);
+    when(user.getAttributeStream(UserModel.USERNAME)).thenReturn(Stream.of("user1"));
+    when(user.getAttributeStream("fullName")).thenReturn(Stream.of("Alex"));
+    var prefetched = new PrefetchedUserModel(user, Map.of("drfo", List.of("1111")),
+        Set.of("drfo"));
+
+    assertEquals(List.of("user1"),
+        prefetched.getAttributeStream(UserModel.USERNAME).collect(Collectors.toList()));
+    assertEquals(List.of("Alex"),
+        prefetched.getAttributeStream("fullName").collect(Collectors.toList()));
+    assertEquals("1111", prefetched.getFirstAttribute("drfo"));
+  }
+
+  private static UserModel mockUser(String id, String federationLink) {
+    var user = mock(UserModel.class);
+    when(user.getId()).thenReturn(id);
+    when(user.getFederationLink()).thenReturn(federationLink);
+    return user;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.jpa;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.jpa.entities.UserAttributeEntity;
+import org.keycloak.models.jpa.entities.UserEntity;
+
+class UserEntityDetacherTest {
+
+  private EntityManager em;
+  private PersistenceUnitUtil persistenceUnitUtil;
+  private UserEntityDetacher detacher;
+
+  @BeforeEach
+  void setUp() {
+    var session = mock(KeycloakSession.class);
+    var jpaConnectionProvider = mock(JpaConnectionProvider.class);
+    var entityManagerFactory = mock(EntityManagerFactory.class);
+    em = mock(EntityManager.class);
+    persistenceUnitUtil = mock(PersistenceUnitUtil.class);
+    when(session.getProvider(JpaConnectionProvider.class)).thenReturn(jpaConnectionProvider);
+    when(jpaConnectionProvider.getEntityManager()).thenReturn(em);
+    when(em.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+    when(entityManagerFactory.getPersistenceUnitUtil()).thenReturn(persistenceUnitUtil);
+    detacher = new UserEntityDetacher(session);
+  }
+
+  @Test
+  void shouldDetachUserWithLoadedAttributes() {
+    var attribute = new UserAttributeEntity();
+    var userEntity = new UserEntity();
+    userEntity.setAttributes(List.of(attribute));
+    when(em.getReference(UserEntity.class, "userId")).thenReturn(userEntity);
+    when(persistenceUnitUtil.isLoaded(userEntity, "attributes")).thenReturn(true);
+
+    detacher.detach(List.of("userId"));
+
+    verify(em).detach(attribute);
+    verify(em).detach(userEntity);
+  }
+
+  @Test
+  void shouldNotLoadAttributesToDetachThem() {
+    var userEntity = mock(UserEntity.class);
+    when(em.getReference(UserEntity.class, "userId")).thenReturn(userEntity);
+
+    detacher.detach(List.of("userId"));
+
+    verify(userEntity, never()).getAttributes();
+    verify(em).detach(userEntity);
+  }
+
+  @Test
+  void shouldSkipUsersOfFederationProviders() {
+    detacher.detach(List.of("f:providerId:userId"));
+
+    verify(em, never()).getReference(any(), anyString());
+    verify(em, never()).detach(any());
+  }
+}
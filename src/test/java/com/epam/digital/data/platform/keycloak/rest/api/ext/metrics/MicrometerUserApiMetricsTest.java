@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.metrics.UserApiMetrics.Endpoint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class MicrometerUserApiMetricsTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final UserApiMetrics metrics = new MicrometerUserApiMetrics(registry);
+
+  @Test
+  void shouldRegisterMetersOfAllEndpoints() {
+    for (var endpoint : Endpoint.values()) {
+      assertNotNull(registry.find("keycloak.users.search")
+          .tag("endpoint", endpoint.getPath()).timer());
+    }
+  }
+
+  @Test
+  void shouldRecordSearch() {
+    var recorder = metrics.start(Endpoint.V2_SEARCH_BY_ATTRIBUTES);
+    recorder.pageSize(10);
+    recorder.iteration();
+    recorder.iteration();
+    var mapped = recorder.countMatched(Stream.of("user1", "user2"))
+        .peek(user -> recorder.scanned())
+        .map(recorder.timeMapping(String::toUpperCase))
+        .collect(Collectors.toList());
+    recorder.scanned();
+    recorder.stop();
+    recorder.stop();
+
+    var tag = Endpoint.V2_SEARCH_BY_ATTRIBUTES.getPath();
+    assertEquals(2, mapped.size());
+    assertEquals(1, registry.get("keycloak.users.search").tag("endpoint", tag).timer().count());
+    assertEquals(3, registry.get("keycloak.users.search.scanned").tag("endpoint", tag).summary()
+        .totalAmount());
+    assertEquals(2, registry.get("keycloak.users.search.matched").tag("endpoint", tag).summary()
+        .totalAmount());
+    assertEquals(2, registry.get("keycloak.users.search.iterations").tag("endpoint", tag)
+        .summary().totalAmount());
+    assertEquals(10, registry.get("keycloak.users.search.page.size").tag("endpoint", tag)
+        .summary().totalAmount());
+    assertEquals(1, registry.get("keycloak.users.search.mapping").tag("endpoint", tag).timer()
+        .count());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 EPAM Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.epam.digital.data.platform.keycloak.rest.api.ext.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.epam.digital.data.platform.keycloak.rest.api.ext.KeycloakBaseTest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.UserModel;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+
+class RealmAttributeStatsLoaderTest extends KeycloakBaseTest {
+
+  @Test
+  void shouldCountUsersAndValuesOfAttributes() {
+    var user1 = new InMemoryUserAdapter(session, realm, "user1");
+    user1.setUsername("user1");
+    user1.setAttribute("edrpou", List.of("1111"));
+    user1.setAttribute("subjectType", List.of("INDIVIDUAL", "INDIVIDUAL"));
+    var user2 = new InMemoryUserAdapter(session, realm, "user2");
+    user2.setUsername("user2");
+    user2.setAttribute("edrpou", List.of("1111"));
+    user2.setAttribute("subjectType", List.of("LEGAL"));
+    var user3 = new InMemoryUserAdapter(session, realm, "user3");
+    user3.setUsername("user3");
+    user3.setAttribute("edrpou", List.of("2222"));
+    var serviceAccount = new InMemoryUserAdapter(session, realm, "service-account");
+    serviceAccount.setServiceAccountClientLink("client");
+    serviceAccount.setAttribute("edrpou", List.of("1111"));
+    when(userProvider.getUsersStream(realm, 0, 1000))
+        .thenReturn(Stream.of(user1, user2, user3, serviceAccount));
+
+    var stats = RealmAttributeStatsLoader.load(session, realm, 1, 100L);
+
+    assertEquals(3, stats.getUserCount());
+    assertEquals(100L, stats.getComputedAt());
+    assertEquals(List.of("edrpou", "subjectType"),
+        stats.getAttributes().keySet().stream().sorted().collect(Collectors.toList()));
+    var edrpou = stats.getAttributes().get("edrpou");
+    assertEquals(3, edrpou.getUserCount());
+    assertEquals(2, edrpou.getDistinctValues());
+    assertEquals(Map.of("1111", 2L), edrpou.getTopValues());
+    var subjectType = stats.getAttributes().get("subjectType");
+    assertEquals(2, subjectType.getUserCount());
+    assertEquals(Map.of("INDIVIDUAL", 1L), subjectType.getTopValues());
+  }
+
+  @Test
+  void shouldReadUsersOfProvidersByPages() {
+    var users = IntStream.range(0, 1500)
+        .mapToObj(i -> {
+          var user = new InMemoryUserAdapter(session, realm, "id" + i);
+          user.setUsername(String.format("user%04d", i));
+          user.setAttribute("subjectType", List.of(i % 2 == 0 ? "EVEN" : "ODD"));
+          return (UserModel) user;
+        })
+        .collect(Collectors.toList());
+    when(userProvider.getUsersStream(eq(realm), anyInt(), anyInt())).thenAnswer(
+        invocation -> users.stream().skip(invocation.<Integer>getArgument(1))
+            .limit(invocation.<Integer>getArgument(2)));
+
+    var stats = RealmAttributeStatsLoader.load(session, realm, 2, 100L);
+
+    assertEquals(1500, stats.getUserCount());
+    assertEquals(Map.of("EVEN", 750L, "ODD", 750L),
+        stats.getAttributes().get("subjectType").getTopValues());
+    verify(userProvider).getUsersStream(realm, 0, 1000);
+    verify(userProvider).getUsersStream(realm, 1000, 1000);
+    verify(userProvider, never()).getUsersStream(realm);
+  }
+
+  @Test
+  void shouldEstimateUsersByTopAndAverageValueCounts() {
+    var topValues = new LinkedHashMap<String, Long>();
+    topValues.put("1111", 60L);
+    var stats = new RealmAttributeStats(100, Map.of("edrpou",
+        new AttributeStats(80, 11, topValues)), 0L);
+
+    assertEquals(60, stats.estimateUsers("edrpou", List.of("1111")));
+    assertEquals(2, stats.estimateUsers("edrpou", List.of("2222")));
+    assertEquals(64, stats.estimateUsers("edrpou", List.of("1111", "2222", "3333")));
+    assertEquals(0, stats.estimateUsers("fullName", List.of("Alex")));
+    assertEquals(80, stats.estimateUsers("edrpou"));
+  }
+}